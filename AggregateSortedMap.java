@@ -0,0 +1,360 @@
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+
+// Associative combine with an identity, e.g. (0, +), (MAX_VALUE, min), (MIN_VALUE, max).
+// combine does not have to be commutative, values are combined in key order.
+interface Monoid<V> {
+
+    V identity();
+
+    V combine(V a, V b);
+
+    static <V> Monoid<V> of(V identity, BinaryOperator<V> combine) {
+        return new Monoid<V>() {
+            public V identity() { return identity; }
+            public V combine(V a, V b) { return combine.apply(a, b); }
+        };
+    }
+}
+
+// AVL tree map in which every node also stores the size and the aggregate of
+// its subtree, so counts and aggregates over a key range take O(log n)
+// instead of walking the range as SortedTableMap.subMap does.
+class AggregateSortedMap<K,V> extends AbstractSortedMap<K,V> {
+
+    private static class Node<K,V> implements Entry<K,V> {
+        private K key;
+        private V value;
+        private Node<K,V> left;
+        private Node<K,V> right;
+        private int height = 1;
+        private int size = 1;
+        private V aggregate;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            aggregate = value;
+        }
+
+        public K getKey() { return key; }
+        public V getValue() { return value; }
+
+        public String toString() { return "<" + key + ", " + value + ">"; }
+    }
+
+    private Monoid<V> monoid;
+    private Node<K,V> root = null;
+
+    public AggregateSortedMap(Monoid<V> monoid) {
+        super();
+        this.monoid = monoid;
+    }
+
+    public AggregateSortedMap(Monoid<V> monoid, Comparator<K> comp) {
+        super(comp);
+        this.monoid = monoid;
+    }
+
+    public int size() { return size(root); }
+
+    private static int size(Node<?,?> n) { return n == null ? 0 : n.size; }
+
+    private static int height(Node<?,?> n) { return n == null ? 0 : n.height; }
+
+    private V aggregate(Node<K,V> n) { return n == null ? monoid.identity() : n.aggregate; }
+
+    // O(1) - recomputes the augmented fields from the children
+    private void update(Node<K,V> n) {
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+        n.size = 1 + size(n.left) + size(n.right);
+        n.aggregate = monoid.combine(monoid.combine(aggregate(n.left), n.value), aggregate(n.right));
+    }
+
+    private Node<K,V> rotateRight(Node<K,V> n) {
+        Node<K,V> l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private Node<K,V> rotateLeft(Node<K,V> n) {
+        Node<K,V> r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private Node<K,V> rebalance(Node<K,V> n) {
+        update(n);
+        int balance = height(n.left) - height(n.right);
+        if (balance > 1) {
+            if (height(n.left.left) < height(n.left.right))
+                n.left = rotateLeft(n.left);
+            return rotateRight(n);
+        }
+        if (balance < -1) {
+            if (height(n.right.right) < height(n.right.left))
+                n.right = rotateRight(n.right);
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    private Node<K,V> find(K key) {
+        Node<K,V> walk = root;
+        while (walk != null) {
+            int c = compare(key, walk.key);
+            if (c == 0) return walk;
+            walk = c < 0 ? walk.left : walk.right;
+        }
+        return null;
+    }
+
+    // O(log n)
+    public V get(K key) throws IllegalArgumentException {
+        checkKey(key);
+        Node<K,V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+    private V replaced;
+
+    // O(log n) - aggregates on the search path are recomputed
+    public V put(K key, V value) throws IllegalArgumentException {
+        checkKey(key);
+        replaced = null;
+        root = put(root, key, value);
+        return replaced;
+    }
+
+    private Node<K,V> put(Node<K,V> n, K key, V value) {
+        if (n == null) return new Node<>(key, value);
+        int c = compare(key, n.key);
+        if (c == 0) {
+            replaced = n.value;
+            n.value = value;
+        } else if (c < 0)
+            n.left = put(n.left, key, value);
+        else
+            n.right = put(n.right, key, value);
+        return rebalance(n);
+    }
+
+    // O(log n)
+    public V remove(K key) throws IllegalArgumentException {
+        checkKey(key);
+        replaced = null;
+        root = remove(root, key);
+        return replaced;
+    }
+
+    private Node<K,V> remove(Node<K,V> n, K key) {
+        if (n == null) return null;
+        int c = compare(key, n.key);
+        if (c < 0)
+            n.left = remove(n.left, key);
+        else if (c > 0)
+            n.right = remove(n.right, key);
+        else {
+            replaced = n.value;
+            if (n.left == null) return n.right;
+            if (n.right == null) return n.left;
+            // Replace n by its successor
+            Node<K,V> successor = n.right;
+            while (successor.left != null)
+                successor = successor.left;
+            successor.right = removeFirst(n.right);
+            successor.left = n.left;
+            return rebalance(successor);
+        }
+        return rebalance(n);
+    }
+
+    private Node<K,V> removeFirst(Node<K,V> n) {
+        if (n.left == null) return n.right;
+        n.left = removeFirst(n.left);
+        return rebalance(n);
+    }
+
+    // O(log n) - number of keys in [fromKey, toKey), same bounds as subMap
+    public int rangeCount(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        if (compare(fromKey, toKey) >= 0) return 0;
+        return rank(toKey) - rank(fromKey);
+    }
+
+    // Number of keys strictly smaller than key
+    private int rank(K key) {
+        int answer = 0;
+        Node<K,V> walk = root;
+        while (walk != null) {
+            if (compare(key, walk.key) <= 0)
+                walk = walk.left;
+            else {
+                answer += size(walk.left) + 1;
+                walk = walk.right;
+            }
+        }
+        return answer;
+    }
+
+    // O(log n) - combine of the values with keys in [fromKey, toKey), in key order
+    public V rangeAggregate(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        if (compare(fromKey, toKey) >= 0) return monoid.identity();
+        return rangeAggregate(root, fromKey, toKey);
+    }
+
+    // A null bound means the subtree already lies on that side of the range
+    private V rangeAggregate(Node<K,V> n, K from, K to) {
+        while (n != null) {
+            if (from == null && to == null)
+                return n.aggregate;
+            if (from != null && compare(n.key, from) < 0)
+                n = n.right;
+            else if (to != null && compare(n.key, to) >= 0)
+                n = n.left;
+            else {
+                V left = rangeAggregate(n.left, from, null);
+                V right = rangeAggregate(n.right, null, to);
+                return monoid.combine(monoid.combine(left, n.value), right);
+            }
+        }
+        return monoid.identity();
+    }
+
+    // O(1) - aggregate of the whole map
+    public V aggregate() { return aggregate(root); }
+
+    public Entry<K,V> firstEntry() {
+        Node<K,V> walk = root;
+        while (walk != null && walk.left != null)
+            walk = walk.left;
+        return walk;
+    }
+
+    public Entry<K,V> lastEntry() {
+        Node<K,V> walk = root;
+        while (walk != null && walk.right != null)
+            walk = walk.right;
+        return walk;
+    }
+
+    // Smallest entry with key >= key (> key if strict)
+    private Entry<K,V> above(K key, boolean strict) {
+        Node<K,V> answer = null;
+        Node<K,V> walk = root;
+        while (walk != null) {
+            int c = compare(walk.key, key);
+            if (c > 0 || (c == 0 && !strict)) {
+                answer = walk;
+                walk = walk.left;
+            } else
+                walk = walk.right;
+        }
+        return answer;
+    }
+
+    // Largest entry with key <= key (< key if strict)
+    private Entry<K,V> below(K key, boolean strict) {
+        Node<K,V> answer = null;
+        Node<K,V> walk = root;
+        while (walk != null) {
+            int c = compare(walk.key, key);
+            if (c < 0 || (c == 0 && !strict)) {
+                answer = walk;
+                walk = walk.right;
+            } else
+                walk = walk.left;
+        }
+        return answer;
+    }
+
+    public Entry<K,V> ceilingEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return above(key, false);
+    }
+
+    public Entry<K,V> higherEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return above(key, true);
+    }
+
+    public Entry<K,V> floorEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return below(key, false);
+    }
+
+    public Entry<K,V> lowerEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return below(key, true);
+    }
+
+    public Iterable<Entry<K,V>> entrySet() { return () -> new EntryIterator(null, null); }
+
+    // Lazy view of [fromKey, toKey)
+    public Iterable<Entry<K,V>> subMap(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        return () -> new EntryIterator(fromKey, toKey);
+    }
+
+    // Inorder with a stack of O(log n) nodes
+    private class EntryIterator implements Iterator<Entry<K,V>> {
+        private ArrayDeque<Node<K,V>> stack = new ArrayDeque<>();
+        private K to;
+
+        EntryIterator(K from, K to) {
+            this.to = to;
+            Node<K,V> walk = root;
+            while (walk != null) {
+                if (from != null && compare(walk.key, from) < 0)
+                    walk = walk.right;
+                else {
+                    stack.push(walk);
+                    walk = walk.left;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !stack.isEmpty() && (to == null || compare(stack.peek().key, to) < 0);
+        }
+
+        public Entry<K,V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node<K,V> node = stack.pop();
+            for (Node<K,V> walk = node.right; walk != null; walk = walk.left)
+                stack.push(walk);
+            return node;
+        }
+    }
+
+    public static void main(String[] args) {
+        AggregateSortedMap<Integer,Integer> sums =
+            new AggregateSortedMap<>(Monoid.of(0, Integer::sum));
+        AggregateSortedMap<Integer,Integer> maxima =
+            new AggregateSortedMap<>(Monoid.of(Integer.MIN_VALUE, Math::max));
+        for (int i = 0; i < 20; i++) {
+            sums.put(i, i * i);
+            maxima.put(i, (i * 7) % 20);
+        }
+        sums.remove(10);
+
+        System.out.println("count [5, 15): " + sums.rangeCount(5, 15));
+        System.out.println("sum [5, 15): " + sums.rangeAggregate(5, 15));
+        System.out.println("max [5, 15): " + maxima.rangeAggregate(5, 15));
+        for (Entry<Integer,Integer> e : sums.subMap(5, 15))
+            System.out.print(e + " ");
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Same operations as LinkedBinaryTree, but a node is an index into parallel
+// arrays instead of an object: about 12-16 bytes per node plus the element,
+// against ~40 for a Node. Removed slots go onto a free list, chained through
+// the left array, and are reused by later insertions.
+class ArrayBinaryTree<E> extends AbstractBinaryTree<E> {
+
+    private static final int NONE = -1;
+
+    // A position is only an index plus the stamp of the slot when it was made,
+    // so positions of removed (and possibly reused) slots are rejected
+    private static final class Slot<E> implements Position<E> {
+        private final ArrayBinaryTree<E> tree;
+        private final int index;
+        private final int stamp;
+
+        Slot(ArrayBinaryTree<E> tree, int index) {
+            this.tree = tree;
+            this.index = index;
+            this.stamp = tree.stamps[index];
+        }
+
+        public E getElement() throws IllegalStateException {
+            if (tree.stamps[index] != stamp)
+                throw new IllegalStateException("Position is no longer in the tree");
+            return tree.element(index);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Slot)) return false;
+            Slot<?> other = (Slot<?>) o;
+            return tree == other.tree && index == other.index && stamp == other.stamp;
+        }
+
+        public int hashCode() { return index * 31 + stamp; }
+    }
+
+    private Object[] elements;
+    private int[] parents;
+    private int[] lefts;
+    private int[] rights;
+    private int[] stamps;   // bumped every time a slot is freed
+    private int[] heights;  // null unless heights are tracked
+
+    private int root = NONE;
+    private int size = 0;
+    private int used = 0;       // slots [0, used) have been handed out at least once
+    private int free = NONE;    // head of the free list
+
+    public ArrayBinaryTree() { this(16, false); }
+
+    public ArrayBinaryTree(int initialCapacity, boolean trackHeights) {
+        int capacity = Math.max(1, initialCapacity);
+        elements = new Object[capacity];
+        parents = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        stamps = new int[capacity];
+        if (trackHeights)
+            heights = new int[capacity];
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private E element(int i) { return (E) elements[i]; }
+
+    private Position<E> position(int i) { return i == NONE ? null : new Slot<>(this, i); }
+
+    protected int validate(Position<E> p) throws IllegalArgumentException {
+        if (!(p instanceof Slot))
+            throw new IllegalArgumentException("Not valid position type");
+        Slot<E> slot = (Slot<E>) p;
+        if (slot.tree != this)
+            throw new IllegalArgumentException("p does not belong to this tree");
+        if (stamps[slot.index] != slot.stamp || parents[slot.index] == slot.index)
+            throw new IllegalArgumentException("p is no longer in the tree");
+        return slot.index;
+    }
+
+    // Amortized O(1) - pops the free list or grows the arrays by doubling
+    private int allocate(E e, int parent) {
+        int i;
+        if (free != NONE) {
+            i = free;
+            free = lefts[i];
+        } else {
+            if (used == elements.length)
+                grow();
+            i = used++;
+        }
+        elements[i] = e;
+        parents[i] = parent;
+        lefts[i] = NONE;
+        rights[i] = NONE;
+        if (heights != null)
+            heights[i] = 0;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        int capacity = elements.length * 2;
+        elements = Arrays.copyOf(elements, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        stamps = Arrays.copyOf(stamps, capacity);
+        if (heights != null)
+            heights = Arrays.copyOf(heights, capacity);
+    }
+
+    private void release(int i) {
+        elements[i] = null;
+        parents[i] = i; // same convention as LinkedBinaryTree: parent == itself
+        rights[i] = NONE;
+        stamps[i]++;
+        lefts[i] = free;
+        free = i;
+        size--;
+    }
+
+    public int size() { return size; }
+
+    public Position<E> root() { return position(root); }
+
+    public Position<E> parent(Position<E> p) throws IllegalArgumentException {
+        return position(parents[validate(p)]);
+    }
+
+    public Position<E> left(Position<E> p) throws IllegalArgumentException {
+        return position(lefts[validate(p)]);
+    }
+
+    public Position<E> right(Position<E> p) throws IllegalArgumentException {
+        return position(rights[validate(p)]);
+    }
+
+    public int numChildren(Position<E> p) throws IllegalArgumentException {
+        int i = validate(p);
+        return (lefts[i] != NONE ? 1 : 0) + (rights[i] != NONE ? 1 : 0);
+    }
+
+    public boolean isRoot(Position<E> p) { return validate(p) == root; }
+
+    // Positions are made on demand, so compare indices rather than references
+    public Position<E> sibling(Position<E> p) throws IllegalArgumentException {
+        int i = validate(p);
+        int parent = parents[i];
+        if (parent == NONE) return null;
+        return position(lefts[parent] == i ? rights[parent] : lefts[parent]);
+    }
+
+    public Position<E> addRoot(E e) throws IllegalStateException {
+        if (!isEmpty()) throw new IllegalStateException("Tree is not empty");
+        root = allocate(e, NONE);
+        return position(root);
+    }
+
+    public Position<E> addLeft(Position<E> p, E e) throws IllegalArgumentException {
+        int parent = validate(p);
+        if (lefts[parent] != NONE)
+            throw new IllegalArgumentException("p already has a left child");
+        int child = allocate(e, parent);
+        lefts[parent] = child;
+        return position(child);
+    }
+
+    public Position<E> addRight(Position<E> p, E e) throws IllegalArgumentException {
+        int parent = validate(p);
+        if (rights[parent] != NONE)
+            throw new IllegalArgumentException("p already has a right child");
+        int child = allocate(e, parent);
+        rights[parent] = child;
+        return position(child);
+    }
+
+    public E set(Position<E> p, E e) throws IllegalArgumentException {
+        int i = validate(p);
+        E temp = element(i);
+        elements[i] = e;
+        return temp;
+    }
+
+    // O(size of t1 + t2) - the nodes are copied into this tree's arrays,
+    // then t1 and t2 are cleared, as LinkedBinaryTree.attach does
+    public void attach(Position<E> p, ArrayBinaryTree<E> t1,
+                       ArrayBinaryTree<E> t2) throws IllegalArgumentException {
+        int node = validate(p);
+        if (lefts[node] != NONE || rights[node] != NONE)
+            throw new IllegalArgumentException("p must be a leaf");
+        if (!t1.isEmpty())
+            lefts[node] = copySubtree(t1, t1.root, node);
+        if (!t2.isEmpty())
+            rights[node] = copySubtree(t2, t2.root, node);
+        t1.clear();
+        t2.clear();
+    }
+
+    // Iterative preorder copy, returns the new index of source's node
+    private int copySubtree(ArrayBinaryTree<E> source, int from, int parent) {
+        int[] stack = new int[2 * source.size + 2];
+        int top = 0;
+        int answer = allocate(source.element(from), parent);
+        if (heights != null && source.heights != null)
+            heights[answer] = source.heights[from];
+        stack[top++] = from;
+        stack[top++] = answer;
+        while (top > 0) {
+            int copy = stack[--top];
+            int original = stack[--top];
+            int l = source.lefts[original];
+            int r = source.rights[original];
+            if (l != NONE) {
+                lefts[copy] = allocate(source.element(l), copy);
+                if (heights != null && source.heights != null)
+                    heights[lefts[copy]] = source.heights[l];
+                stack[top++] = l;
+                stack[top++] = lefts[copy];
+            }
+            if (r != NONE) {
+                rights[copy] = allocate(source.element(r), copy);
+                if (heights != null && source.heights != null)
+                    heights[rights[copy]] = source.heights[r];
+                stack[top++] = r;
+                stack[top++] = rights[copy];
+            }
+        }
+        return answer;
+    }
+
+    // O(capacity) - every existing position becomes invalid
+    public void clear() {
+        for (int i = 0; i < used; i++)
+            if (parents[i] != i) {
+                elements[i] = null;
+                stamps[i]++;
+            }
+        root = NONE;
+        size = 0;
+        used = 0;
+        free = NONE;
+    }
+
+    public E remove(Position<E> p) throws IllegalArgumentException {
+        int node = validate(p);
+        if (lefts[node] != NONE && rights[node] != NONE)
+            throw new IllegalArgumentException("p has two children");
+        int child = lefts[node] != NONE ? lefts[node] : rights[node];
+        int parent = parents[node];
+        if (child != NONE)
+            parents[child] = parent;
+        if (node == root)
+            root = child;
+        else if (lefts[parent] == node)
+            lefts[parent] = child;
+        else
+            rights[parent] = child;
+        E temp = element(node);
+        release(node);
+        return temp;
+    }
+
+    public boolean tracksHeights() { return heights != null; }
+
+    public int getHeight(Position<E> p) {
+        if (heights == null) throw new IllegalStateException("Heights are not tracked");
+        return heights[validate(p)];
+    }
+
+    public void setHeight(Position<E> p, int value) {
+        if (heights == null) throw new IllegalStateException("Heights are not tracked");
+        heights[validate(p)] = value;
+    }
+
+    // O(n) - iterative, walks the index arrays with an int stack
+    public Iterable<Position<E>> inorder() {
+        List<Position<E>> snapshot = new ArrayList<>(size);
+        int[] stack = new int[16];
+        int top = 0;
+        int walk = root;
+        while (walk != NONE || top > 0) {
+            while (walk != NONE) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, 2 * top);
+                stack[top++] = walk;
+                walk = lefts[walk];
+            }
+            walk = stack[--top];
+            snapshot.add(position(walk));
+            walk = rights[walk];
+        }
+        return snapshot;
+    }
+
+    // O(n) - same order as inorder(), without making positions
+    public Iterator<E> iterator() { return new ElementIterator(); }
+
+    private class ElementIterator implements Iterator<E> {
+        private int[] stack = new int[16];
+        private int top = 0;
+
+        ElementIterator() { pushLeftSpine(root); }
+
+        private void pushLeftSpine(int walk) {
+            for (; walk != NONE; walk = lefts[walk]) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, 2 * top);
+                stack[top++] = walk;
+            }
+        }
+
+        public boolean hasNext() { return top > 0; }
+
+        public E next() {
+            if (top == 0) throw new NoSuchElementException();
+            int node = stack[--top];
+            pushLeftSpine(rights[node]);
+            return element(node);
+        }
+    }
+
+    // O(n) - height of the whole tree, iterative breadth-first
+    public int height() {
+        if (root == NONE) return 0;
+        int[] level = { root };
+        int h = -1;
+        while (level.length > 0) {
+            h++;
+            int count = 0;
+            for (int i : level)
+                count += (lefts[i] != NONE ? 1 : 0) + (rights[i] != NONE ? 1 : 0);
+            int[] next = new int[count];
+            int k = 0;
+            for (int i : level) {
+                if (lefts[i] != NONE) next[k++] = lefts[i];
+                if (rights[i] != NONE) next[k++] = rights[i];
+            }
+            level = next;
+        }
+        return h;
+    }
+
+    public static void main(String[] args) {
+        Integer[] array = new Integer[] {0, 3, 5, 8, 10, 50, 60, 75, 99};
+        ArrayBinaryTree<Integer> tree = new ArrayBinaryTree<>();
+        Position<Integer> root = tree.addRoot(array[4]);
+        Position<Integer> left = tree.addLeft(root, array[1]);
+        Position<Integer> right = tree.addRight(root, array[6]);
+        tree.addLeft(left, array[0]);
+        tree.addRight(tree.addRight(left, array[2]), array[3]);
+        tree.addLeft(right, array[5]);
+        tree.addRight(tree.addRight(right, array[7]), array[8]);
+
+        for (Integer i : tree)
+            System.out.print(i + " ");
+        System.out.println("\nHeight: " + tree.height());
+
+        tree.remove(tree.left(left));
+        for (Position<Integer> p : tree.inorder())
+            System.out.print(p.getElement() + " ");
+    }
+}
@@ -1,6 +1,17 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.lang.reflect.Array;
 
 interface Entry<K,V> {
 
@@ -149,7 +160,7 @@ abstract class AbstractTree<E> implements Tree<E> {
 
 class LinkedQueue<E> implements Queue<E> {
 
-    private SinglyLinkedList<E> list = new SinglyLinkedList<>();
+    private UnrolledLinkedList<E> list = new UnrolledLinkedList<>();
 
     public LinkedQueue() { }
 
@@ -344,6 +355,166 @@ class SinglyLinkedList<E> implements Cloneable {
     }
 }
 
+class UnrolledLinkedList<E> implements Cloneable {
+
+    private static final int CHUNK_SIZE = 64;
+
+    // Elements live in items[start..end), chunks in the middle may be partly filled
+    private static class Chunk {
+
+        private Object[] items = new Object[CHUNK_SIZE];
+
+        private int start;
+
+        private int end;
+
+        private Chunk next;
+
+        public Chunk(int position) {
+            start = position;
+            end = position;
+        }
+    }
+
+    private Chunk head = null;
+
+    private Chunk tail = null;
+
+    private int size = 0;
+
+    public UnrolledLinkedList() { }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    @SuppressWarnings({"unchecked"})
+    public E first() {
+        if (isEmpty()) return null;
+        return (E) head.items[head.start];
+    }
+
+    @SuppressWarnings({"unchecked"})
+    public E last() {
+        if (isEmpty()) return null;
+        return (E) tail.items[tail.end - 1];
+    }
+
+    // O(1) - allocates a chunk once every CHUNK_SIZE calls
+    public void addFirst(E e) {
+        if (head == null || head.start == 0) {
+            Chunk newest = new Chunk(CHUNK_SIZE);
+            newest.next = head;
+            head = newest;
+            if (tail == null)
+                tail = head;
+        }
+        head.items[--head.start] = e;
+        size++;
+    }
+
+    // O(1) - allocates a chunk once every CHUNK_SIZE calls
+    public void addLast(E e) {
+        if (tail == null || tail.end == CHUNK_SIZE) {
+            Chunk newest = new Chunk(0);
+            if (tail == null)
+                head = newest;
+            else
+                tail.next = newest;
+            tail = newest;
+        }
+        tail.items[tail.end++] = e;
+        size++;
+    }
+
+    // O(1)
+    @SuppressWarnings({"unchecked"})
+    public E removeFirst() {
+        if (isEmpty()) return null;
+        E answer = (E) head.items[head.start];
+        head.items[head.start++] = null;
+        size--;
+        if (head.start == head.end) {
+            head = head.next;
+            if (head == null)
+                tail = null;
+        }
+        return answer;
+    }
+
+    // O(1) - moves the chunks of other to the end of this list, other becomes empty
+    public void addAll(UnrolledLinkedList<E> other) {
+        if (other == this || other.isEmpty()) return;
+        if (isEmpty())
+            head = other.head;
+        else
+            tail.next = other.head;
+        tail = other.tail;
+        size += other.size;
+        other.head = null;
+        other.tail = null;
+        other.size = 0;
+    }
+
+    public boolean equals(Object o) {
+        if (o == null) return false;
+        if (getClass() != o.getClass()) return false;
+        UnrolledLinkedList<?> other = (UnrolledLinkedList<?>) o;
+        if (size != other.size) return false;
+        Chunk chunkA = head;
+        Chunk chunkB = other.head;
+        int a = chunkA == null ? 0 : chunkA.start;
+        int b = chunkB == null ? 0 : chunkB.start;
+        for (int left = size; left > 0; left--) {
+            while (a == chunkA.end) { chunkA = chunkA.next; a = chunkA.start; }
+            while (b == chunkB.end) { chunkB = chunkB.next; b = chunkB.start; }
+            if (!chunkA.items[a++].equals(chunkB.items[b++])) return false;
+        }
+        return true;
+    }
+
+    // O(n / CHUNK_SIZE) allocations, each chunk is one array copy
+    @SuppressWarnings({"unchecked"})
+    public UnrolledLinkedList<E> clone() throws CloneNotSupportedException {
+        UnrolledLinkedList<E> other = (UnrolledLinkedList<E>) super.clone();
+        other.head = null;
+        other.tail = null;
+        for (Chunk walk = head; walk != null; walk = walk.next) {
+            Chunk copy = new Chunk(walk.start);
+            copy.end = walk.end;
+            System.arraycopy(walk.items, walk.start, copy.items, walk.start, walk.end - walk.start);
+            if (other.head == null)
+                other.head = copy;
+            else
+                other.tail.next = copy;
+            other.tail = copy;
+        }
+        return other;
+    }
+
+    public int hashCode() {
+        int h = 0;
+        for (Chunk walk = head; walk != null; walk = walk.next)
+            for (int i = walk.start; i < walk.end; i++) {
+                h ^= walk.items[i].hashCode();
+                h = (h << 5) | (h >>> 27);
+            }
+        return h;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for (Chunk walk = head; walk != null; walk = walk.next)
+            for (int i = walk.start; i < walk.end; i++) {
+                if (sb.length() > 1)
+                    sb.append(", ");
+                sb.append(walk.items[i]);
+            }
+        sb.append(")");
+        return sb.toString();
+    }
+}
+
 class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
 
     protected static class Node<E> implements Position<E> {
@@ -351,6 +522,7 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         private Node<E> parent;
         private Node<E> left;
         private Node<E> right;
+        private int indexId;     // preorder number while an ancestor index exists
 
         public Node(E e, Node<E> above, Node<E> leftChild, Node<E> rightChild) {
             element = e;
@@ -377,7 +549,13 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
 
     protected Node<E> root = null;
 
-    private int size = 0;
+    protected int size = 0;
+
+    // Automatic rebalancing is off while this is 0, see enableAutoRebalance
+    private double rebalanceFactor = 0;
+
+    // Built by buildAncestorIndex, dropped by every structural change
+    private AncestorIndex<E> ancestors = null;
 
     public LinkedBinaryTree() { }
 
@@ -417,6 +595,7 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         if (!isEmpty()) throw new IllegalStateException("Tree is not empty");
         root = createNode(e, null, null, null);
         size = 1;
+        dropAncestorIndex();
         return root;
     }
 
@@ -428,6 +607,10 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         Node<E> child = createNode(e, parent, null, null);
         parent.setLeft(child);
         size++;
+        dropAncestorIndex();
+        reshaped(parent, false);
+        if (rebalanceFactor > 0)
+            checkBalance(child);
         return child;
     }
 
@@ -439,6 +622,10 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         Node<E> child = createNode(e, parent, null, null);
         parent.setRight(child);
         size++;
+        dropAncestorIndex();
+        reshaped(parent, false);
+        if (rebalanceFactor > 0)
+            checkBalance(child);
         return child;
     }
 
@@ -454,6 +641,9 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         Node<E> node = validate(p);
         if (isInternal(p)) throw new IllegalArgumentException("p must be a leaf");
         size += t1.size() + t2.size();
+        dropAncestorIndex();
+        t1.dropAncestorIndex();
+        t2.dropAncestorIndex();
         if (!t1.isEmpty()) {
             t1.root.setParent(node);
             node.setLeft(t1.root);
@@ -466,6 +656,7 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
             t2.root = null;
             t2.size = 0;
         }
+        reshaped(node, false);
     }
 
     public E remove(Position<E> p) throws IllegalArgumentException {
@@ -473,18 +664,21 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         if (numChildren(p) == 2)
             throw new IllegalArgumentException("p has two children");
         Node<E> child = (node.getLeft() != null ? node.getLeft() : node.getRight() );
+        Node<E> parent = node.getParent();
         if (child != null)
-            child.setParent(node.getParent());
+            child.setParent(parent);
         if (node == root)
             root = child;
         else {
-            Node<E> parent = node.getParent();
             if (node == parent.getLeft())
                 parent.setLeft(child);
             else
                 parent.setRight(child);
         }
         size--;
+        dropAncestorIndex();
+        if (parent != null)
+            reshaped(parent, false);
         E temp = node.getElement();
         node.setElement(null);
         node.setLeft(null);
@@ -492,12 +686,518 @@ class LinkedBinaryTree<E> extends AbstractBinaryTree<E> {
         node.setParent(node);
         return temp;
     }
+
+    // O(n) time, O(1) extra space, no new nodes (Day-Stout-Warren).
+    // Reshapes the tree to minimum height, keeping the inorder sequence.
+    // Positions stay valid, only their parents and children change.
+    public void rebalance() {
+        if (root != null)
+            rebalanceSubtree(root, size);
+    }
+
+    // After addLeft/addRight, if the new node is deeper than factor * log2(size),
+    // the lowest ancestor whose subtree is too tall for its size is rebalanced
+    // in place (scapegoat style). Amortized O(log n) per insertion.
+    public void enableAutoRebalance(double factor) throws IllegalArgumentException {
+        if (factor < 1)
+            throw new IllegalArgumentException("Factor must be at least 1");
+        rebalanceFactor = factor;
+    }
+
+    public void disableAutoRebalance() { rebalanceFactor = 0; }
+
+    private boolean tooTall(int height, int nodes) {
+        return height > rebalanceFactor * Math.log(nodes + 1) / Math.log(2);
+    }
+
+    private void checkBalance(Node<E> added) {
+        int depth = 0;
+        for (Node<E> walk = added; walk.getParent() != null; walk = walk.getParent())
+            depth++;
+        if (!tooTall(depth, size)) return;
+
+        // Climb until the subtree is too tall for its own size
+        int height = 0;
+        int nodes = 1;
+        Node<E> walk = added;
+        while (walk.getParent() != null) {
+            Node<E> parent = walk.getParent();
+            Node<E> sibling = (walk == parent.getLeft()) ? parent.getRight() : parent.getLeft();
+            height++;
+            nodes += 1 + countSubtree(sibling);
+            walk = parent;
+            if (tooTall(height, nodes))
+                break;
+        }
+        rebalanceSubtree(walk, nodes);
+    }
+
+    // O(subtree size), O(1) space - walks with parent links instead of a stack
+    private int countSubtree(Node<E> top) {
+        if (top == null) return 0;
+        int count = 0;
+        Node<E> walk = top;
+        Node<E> from = top.getParent();
+        while (true) {
+            if (from == walk.getParent()) {
+                count++;
+                if (walk.getLeft() != null) { from = walk; walk = walk.getLeft(); continue; }
+                if (walk.getRight() != null) { from = walk; walk = walk.getRight(); continue; }
+            } else if (from == walk.getLeft() && walk.getRight() != null) {
+                from = walk;
+                walk = walk.getRight();
+                continue;
+            }
+            if (walk == top) return count;
+            from = walk;
+            walk = walk.getParent();
+        }
+    }
+
+    private void rebalanceSubtree(Node<E> top, int n) {
+        RebalanceEvent event = new RebalanceEvent();
+        event.begin();
+        Node<E> above = top.getParent();
+        boolean wasLeft = above != null && above.getLeft() == top;
+        dropAncestorIndex();
+        top.setParent(null);
+
+        Node<E> vine = treeToVine(top);
+
+        // Leave a perfect tree plus one partial bottom level
+        int full = Integer.highestOneBit(n + 1) - 1;
+        vine = compress(vine, n - full);
+        for (int m = full / 2; m > 0; m /= 2)
+            vine = compress(vine, m);
+
+        vine.setParent(above);
+        if (above == null)
+            root = vine;
+        else if (wasLeft)
+            above.setLeft(vine);
+        else
+            above.setRight(vine);
+        reshaped(vine, true);
+        traceRebalance(event, this, above == null ? "rebalance" : "rebalance subtree");
+    }
+
+    // Called after the children of node changed, or with deep set after the
+    // whole subtree below node was rearranged. For subclasses that keep data
+    // per node, like AVLTree's heights and sizes, to bring node, its
+    // ancestors and if deep its descendants up to date.
+    protected void reshaped(Node<E> node, boolean deep) { }
+
+    // Commits a tree event started by the caller, if recording is enabled
+    static void traceRebalance(RebalanceEvent event, Tree<?> tree, String operation) {
+        if (event.shouldCommit()) {
+            event.structure = TraceEvents.identity(tree);
+            event.size = tree.size();
+            event.operation = operation;
+            event.commit();
+        }
+    }
+
+    // Right rotations until no node has a left child, returns the new top
+    private Node<E> treeToVine(Node<E> top) {
+        Node<E> head = top;
+        Node<E> tail = null;
+        Node<E> rest = top;
+        while (rest != null) {
+            if (rest.getLeft() == null) {
+                tail = rest;
+                rest = rest.getRight();
+            } else {
+                Node<E> l = rest.getLeft();
+                rest.setLeft(l.getRight());
+                if (l.getRight() != null) l.getRight().setParent(rest);
+                l.setRight(rest);
+                rest.setParent(l);
+                l.setParent(tail);
+                if (tail == null)
+                    head = l;
+                else
+                    tail.setRight(l);
+                rest = l;
+            }
+        }
+        return head;
+    }
+
+    // Left-rotates count alternate nodes down the right spine, returns the new top
+    private Node<E> compress(Node<E> top, int count) {
+        Node<E> head = top;
+        Node<E> scanner = null;
+        for (int i = 0; i < count; i++) {
+            Node<E> child = (scanner == null) ? head : scanner.getRight();
+            Node<E> next = child.getRight();
+            next.setParent(scanner);
+            if (scanner == null)
+                head = next;
+            else
+                scanner.setRight(next);
+            child.setRight(next.getLeft());
+            if (next.getLeft() != null) next.getLeft().setParent(child);
+            next.setLeft(child);
+            child.setParent(next);
+            scanner = next;
+        }
+        return head;
+    }
+
+    // O(n) time, O(log n) state besides the nodes. Builds a minimum-height
+    // tree from a strictly increasing stream of unknown length without
+    // buffering it. Perfect subtrees are kept on a stack with strictly
+    // decreasing heights, like the digits of a binary counter, each followed
+    // by the element that will become its parent; two of equal height are
+    // merged as soon as they appear. At the end the stack is folded from the
+    // right, giving height floor(log2 n) + 1.
+    @SuppressWarnings({"unchecked"})
+    public void buildFromSorted(Iterator<E> data) throws IllegalStateException {
+        if (!isEmpty()) throw new IllegalStateException("Tree is not empty");
+        Node<E>[] trees = (Node<E>[]) new Node<?>[64];
+        Node<E>[] parents = (Node<E>[]) new Node<?>[64];
+        int[] heights = new int[64];
+        int top = 0;
+        int n = 0;
+        while (data.hasNext()) {
+            Node<E> node = createNode(data.next(), null, null, null);
+            n++;
+            if (top > 0 && parents[top - 1] == null) {
+                parents[top - 1] = node;
+                continue;
+            }
+            Node<E> tree = joinSorted(null, node, null);
+            int height = 1;
+            while (top > 0 && heights[top - 1] == height) {
+                top--;
+                tree = joinSorted(trees[top], parents[top], tree);
+                height++;
+            }
+            trees[top] = tree;
+            parents[top] = null;
+            heights[top++] = height;
+        }
+        if (top == 0) return;
+        top--;
+        Node<E> answer = parents[top] == null ? trees[top] : joinSorted(trees[top], parents[top], null);
+        while (top > 0) {
+            top--;
+            answer = joinSorted(trees[top], parents[top], answer);
+        }
+        install(answer, n);
+    }
+
+    // Below this many elements buildFromSorted(E[], int) stops forking
+    private static final int BUILD_THRESHOLD = 8192;
+
+    // O(n) work, O(log n) span - builds the same shape as ArrayToBST.constructTree
+    // from the strictly increasing data[0, length), subtrees forked on the
+    // common ForkJoinPool
+    public void buildFromSorted(E[] data, int length) throws IllegalStateException {
+        if (!isEmpty()) throw new IllegalStateException("Tree is not empty");
+        if (length == 0) return;
+        Node<E> answer = ForkJoinPool.commonPool().invoke(new BuildTask(data, 0, length));
+        install(answer, length);
+    }
+
+    // Makes a detached structure of n nodes the content of this empty tree
+    protected void install(Node<E> top, int n) {
+        top.setParent(null);
+        root = top;
+        size = n;
+        dropAncestorIndex();
+    }
+
+    // Never serialized, RecursiveTask just happens to be Serializable
+    private class BuildTask extends RecursiveTask<Node<E>> {
+        private static final long serialVersionUID = 1L;
+        private transient E[] data;
+        private int from;
+        private int to;
+
+        BuildTask(E[] data, int from, int to) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Node<E> compute() {
+            if (from >= to) return null;
+            int mid = from + (to - 1 - from) / 2;
+            BuildTask left = new BuildTask(data, from, mid);
+            BuildTask right = new BuildTask(data, mid + 1, to);
+            Node<E> l;
+            Node<E> r;
+            if (to - from > BUILD_THRESHOLD) {
+                left.fork();
+                r = right.compute();
+                l = left.join();
+            } else {
+                l = left.compute();
+                r = right.compute();
+            }
+            return joinSorted(l, createNode(data[mid], null, null, null), r);
+        }
+    }
+
+    // Makes middle the parent of left and right, for buildFromSorted
+    protected Node<E> joinSorted(Node<E> left, Node<E> middle, Node<E> right) {
+        middle.setLeft(left);
+        middle.setRight(right);
+        if (left != null) left.setParent(middle);
+        if (right != null) right.setParent(middle);
+        return middle;
+    }
+
+    // Preorder numbering plus a sparse table of minimum-depth positions over
+    // it. p is an ancestor of q iff id(p) <= id(q) <= end(p), and for
+    // id(p) < id(q) the lca is the parent of the shallowest position in
+    // (id(p), id(q)] unless p is itself the ancestor.
+    private static class AncestorIndex<E> {
+        private Node<E>[] nodes;
+        private int[] depth;
+        private int[] end;       // largest id in the subtree
+        private int[][] shallowest;
+
+        @SuppressWarnings({"unchecked"})
+        AncestorIndex(Node<E> root, int n) {
+            nodes = (Node<E>[]) new Node<?>[n];
+            depth = new int[n];
+            end = new int[n];
+            int[] parent = new int[n];
+            ArrayDeque<Node<E>> stack = new ArrayDeque<>();
+            stack.push(root);
+            int next = 0;
+            while (!stack.isEmpty()) {
+                Node<E> node = stack.pop();
+                int id = next++;
+                node.indexId = id;
+                nodes[id] = node;
+                parent[id] = node.getParent() == null ? -1 : node.getParent().indexId;
+                depth[id] = parent[id] < 0 ? 0 : depth[parent[id]] + 1;
+                if (node.getRight() != null) stack.push(node.getRight());
+                if (node.getLeft() != null) stack.push(node.getLeft());
+            }
+            // Subtree sizes in reverse preorder: children come after parents
+            for (int id = 0; id < n; id++)
+                end[id] = id;
+            for (int id = n - 1; id > 0; id--)
+                end[parent[id]] = Math.max(end[parent[id]], end[id]);
+
+            int levels = 32 - Integer.numberOfLeadingZeros(n);
+            shallowest = new int[levels][];
+            shallowest[0] = new int[n];
+            for (int id = 0; id < n; id++)
+                shallowest[0][id] = id;
+            for (int k = 1; k < levels; k++) {
+                int half = 1 << (k - 1);
+                int[] below = shallowest[k - 1];
+                int[] level = new int[n - (1 << k) + 1];
+                for (int i = 0; i < level.length; i++)
+                    level[i] = shallower(below[i], below[i + half]);
+                shallowest[k] = level;
+            }
+        }
+
+        private int shallower(int a, int b) { return depth[a] <= depth[b] ? a : b; }
+
+        int id(Node<E> node) throws IllegalArgumentException {
+            int id = node.indexId;
+            if (id < 0 || id >= nodes.length || nodes[id] != node)
+                throw new IllegalArgumentException("p is not in this tree");
+            return id;
+        }
+
+        boolean isAncestor(int a, int b) { return a <= b && b <= end[a]; }
+
+        // Shallowest id in [from, to]
+        int shallowest(int from, int to) {
+            int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+            return shallower(shallowest[k][from], shallowest[k][to - (1 << k) + 1]);
+        }
+    }
+
+    // O(n log n) time and space, once. Afterwards depth, isAncestor and lca
+    // take O(1) until the next addRoot/addLeft/addRight/attach/remove or
+    // rebalance, which drop the index; without one they walk parent links.
+    public void buildAncestorIndex() {
+        ancestors = root == null ? null : new AncestorIndex<>(root, size);
+    }
+
+    public boolean hasAncestorIndex() { return ancestors != null; }
+
+    protected void dropAncestorIndex() { ancestors = null; }
+
+    public int depth(Position<E> p) throws IllegalArgumentException {
+        Node<E> node = validate(p);
+        if (ancestors != null)
+            return ancestors.depth[ancestors.id(node)];
+        int d = 0;
+        for (Node<E> walk = node.getParent(); walk != null; walk = walk.getParent())
+            d++;
+        return d;
+    }
+
+    // True if p is q or lies on the path from q to the root
+    public boolean isAncestor(Position<E> p, Position<E> q) throws IllegalArgumentException {
+        Node<E> a = validate(p);
+        Node<E> b = validate(q);
+        if (ancestors != null)
+            return ancestors.isAncestor(ancestors.id(a), ancestors.id(b));
+        for (Node<E> walk = b; walk != null; walk = walk.getParent())
+            if (walk == a) return true;
+        return false;
+    }
+
+    // Lowest common ancestor of p and q
+    public Position<E> lca(Position<E> p, Position<E> q) throws IllegalArgumentException {
+        Node<E> a = validate(p);
+        Node<E> b = validate(q);
+        if (ancestors != null) {
+            int i = ancestors.id(a);
+            int j = ancestors.id(b);
+            if (i > j) { int t = i; i = j; j = t; }
+            if (ancestors.isAncestor(i, j)) return ancestors.nodes[i];
+            return ancestors.nodes[ancestors.shallowest(i + 1, j)].getParent();
+        }
+        int da = depth(a);
+        int db = depth(b);
+        for (; da > db; da--) a = a.getParent();
+        for (; db > da; db--) b = b.getParent();
+        while (a != b) {
+            a = a.getParent();
+            b = b.getParent();
+        }
+        if (a == null)
+            throw new IllegalArgumentException("p and q are not in the same tree");
+        return a;
+    }
+
+    // Inorder, same as iterator(). Splits on subtree boundaries: the prefix
+    // takes whole subtrees from the front until it holds half the elements,
+    // opening up only the subtrees that straddle the middle.
+    public Spliterator<E> spliterator() {
+        return new SubtreeSpliterator<>(root, size, null, null);
+    }
+
+    // Without subtree sizes (sizes == null) the sizes of the pieces are
+    // estimates, so only the unsplit spliterator is SIZED; trees that keep
+    // sizes get SIZED | SUBSIZED splits. order, if given, makes it SORTED.
+    protected static class SubtreeSpliterator<E> implements Spliterator<E> {
+        // A pending node: whole stands for its subtree, otherwise its element alone
+        private static final class Piece<E> {
+            final Node<E> node;
+            final boolean whole;
+            final long size;
+            Piece(Node<E> node, boolean whole, long size) {
+                this.node = node;
+                this.whole = whole;
+                this.size = size;
+            }
+        }
+
+        private ArrayDeque<Piece<E>> work = new ArrayDeque<>(); // traversal order
+        private long estimate;      // sum of the pending sizes
+        private long exactCount;    // elements left when known without sizes, else -1
+        private ToLongFunction<Node<E>> sizes;
+        private Comparator<? super E> order;
+
+        SubtreeSpliterator(Node<E> root, long size, ToLongFunction<Node<E>> sizes,
+                           Comparator<? super E> order) {
+            this.sizes = sizes;
+            this.order = order;
+            if (root != null)
+                work.addLast(new Piece<>(root, true, size));
+            estimate = size;
+            exactCount = sizes == null ? size : -1;
+        }
+
+        private long sizeOf(Node<E> child, long share) {
+            if (child == null) return 0;
+            return sizes != null ? sizes.applyAsLong(child) : Math.max(1, share);
+        }
+
+        // Replaces the whole subtree at the front by left, node, right
+        private void expandFirst() {
+            Piece<E> p = work.pollFirst();
+            Node<E> node = p.node;
+            long leftShare = (p.size - 1) / 2;
+            long left = sizeOf(node.getLeft(), leftShare);
+            long right = sizeOf(node.getRight(), p.size - 1 - leftShare);
+            if (node.getRight() != null)
+                work.addFirst(new Piece<>(node.getRight(), true, right));
+            work.addFirst(new Piece<>(node, false, 1));
+            if (node.getLeft() != null)
+                work.addFirst(new Piece<>(node.getLeft(), true, left));
+            estimate += left + 1 + right - p.size;
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (!work.isEmpty()) {
+                if (work.peekFirst().whole) {
+                    expandFirst();
+                    continue;
+                }
+                action.accept(work.pollFirst().node.getElement());
+                estimate--;
+                if (exactCount > 0) exactCount--;
+                return true;
+            }
+            return false;
+        }
+
+        // O(height) - moves front pieces over while the prefix stays no larger
+        // than the rest, expanding a subtree that would tip it past the middle
+        public Spliterator<E> trySplit() {
+            SubtreeSpliterator<E> prefix = new SubtreeSpliterator<>(null, 0, sizes, order);
+            while (!work.isEmpty()) {
+                Piece<E> p = work.peekFirst();
+                if (prefix.estimate + p.size <= estimate - p.size) {
+                    prefix.work.addLast(work.pollFirst());
+                    prefix.estimate += p.size;
+                    estimate -= p.size;
+                } else if (p.whole) {
+                    expandFirst();
+                } else {
+                    break;
+                }
+            }
+            if (prefix.work.isEmpty())
+                return null;
+            exactCount = -1;
+            prefix.exactCount = -1;
+            return prefix;
+        }
+
+        public long estimateSize() { return exactCount >= 0 ? exactCount : estimate; }
+
+        public int characteristics() {
+            int c = Spliterator.ORDERED;
+            if (sizes != null)
+                c |= Spliterator.SIZED | Spliterator.SUBSIZED;
+            else if (exactCount >= 0)
+                c |= Spliterator.SIZED;
+            if (order != null)
+                c |= Spliterator.SORTED;
+            return c;
+        }
+
+        public Comparator<? super E> getComparator() {
+            if (order == null)
+                throw new IllegalStateException();
+            return order;
+        }
+    }
 }
 
 class AVLTree<K,V> extends LinkedBinaryTree<Entry<K,V>> {
 
+    // height counts nodes on the longest downward path, so a leaf has height
+    // 1 and a missing child 0; size counts the nodes of the subtree. Every
+    // structural change keeps both up to date.
     protected static class AVLNode<E> extends Node<E> {
-        int height=0;
+        int height=1;
+        int size=1;
         AVLNode(E e, Node<E> parent, Node<E> leftChild, Node<E> rightChild) {
             super(e, parent, leftChild, rightChild);
         }
@@ -519,46 +1219,413 @@ class AVLTree<K,V> extends LinkedBinaryTree<Entry<K,V>> {
         return new AVLNode<>(e, parent, left, right);
     }
 
-    private void relink(Node<Entry<K,V>> parent, Node<Entry<K,V>> child,
-                        boolean makeLeftChild) {
-        child.setParent(parent);
-        if (makeLeftChild)
-            parent.setLeft(child);
-        else
-            parent.setRight(child);
+    // The node sizes make every split exact, and the inorder is sorted by key
+    public Spliterator<Entry<K,V>> spliterator() {
+        return new SubtreeSpliterator<>(root, size(), n -> ((AVLNode<Entry<K,V>>) n).size,
+                                        (a, b) -> comp.compare(a.getKey(), b.getKey()));
+    }
+
+    // Moves x above its parent y, keeping the inorder sequence, and updates
+    // the heights and sizes of y and x. Leaves the root field and the
+    // ancestors alone, so the join operations use it on detached subtrees.
+    private static <E> Node<E> rotateUp(Node<E> x) {
+        Node<E> y = x.getParent( );
+        Node<E> z = y.getParent( );
+        x.setParent(z);
+        if (z != null) {
+            if (y == z.getLeft( ))
+                z.setLeft(x);
+            else
+                z.setRight(x);
+        }
+        if (x == y.getLeft( )) {
+            Node<E> middle = x.getRight( );
+            y.setLeft(middle);
+            if (middle != null) middle.setParent(y);
+            x.setRight(y);
+        } else {
+            Node<E> middle = x.getLeft( );
+            y.setRight(middle);
+            if (middle != null) middle.setParent(y);
+            x.setLeft(y);
+        }
+        y.setParent(x);
+        update(y);
+        update(x);
+        return x;
     }
 
     public void rotate(Position<Entry<K,V>> p) {
         Node<Entry<K,V>> x = validate(p);
-        Node<Entry<K,V>> y = x.getParent( );
-        Node<Entry<K,V>> z = y.getParent( );
-        if (z == null) {
+        dropAncestorIndex();
+        rotateUp(x);
+        if (x.getParent( ) == null)
             root = x;
-            x.setParent(null);
-        } else
-            relink(z, x, y == z.getLeft( ));
+        updateAncestors(x.getParent( ));
+    }
 
-        if (x == y.getLeft( )) {
-            relink(y, x.getRight( ), true);
-            relink(x, y, false);
-        } else {
-            relink(y, x.getLeft( ), false);
-            relink(x, y, true);
-        }
+    // Sizes above a rotation stay the same, heights may change
+    private static <E> void updateAncestors(Node<E> n) {
+        for (; n != null; n = n.getParent( ))
+            update(n);
+    }
+
+    protected void reshaped(Node<Entry<K,V>> node, boolean deep) {
+        if (deep)
+            updateSubtree(node);
+        updateAncestors(node);
+    }
+
+    // O(subtree size), postorder; the recursion follows the subtree's height
+    private static <E> void updateSubtree(Node<E> n) {
+        if (n == null) return;
+        updateSubtree(n.getLeft());
+        updateSubtree(n.getRight());
+        update(n);
     }
 
     public Position<Entry<K,V>> restructure(Position<Entry<K,V>> x) {
+        RebalanceEvent event = new RebalanceEvent();
+        event.begin();
         Position<Entry<K,V>> y = parent(x);
         Position<Entry<K,V>> z = parent(y);
         if ((x == right(y)) == (y == right(z))) {
             rotate(y);
+            traceRebalance(event, this, "single rotation");
             return y;
         } else {
             rotate(x);
             rotate(x);
+            traceRebalance(event, this, "double rotation");
             return x;
         }
     }
+
+    // ---------------------------------------------------------------------
+    // Join-based operations (Blelloch, Ferizovic, Sun: "Just Join").
+    // They work on detached subtrees and balance with rotateUp, relying on
+    // the heights and sizes every AVLNode carries.
+    // ---------------------------------------------------------------------
+
+    // Below this many nodes the set operations stop forking
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+
+    private Comparator<K> comp;
+
+    public AVLTree() { this(new DefaultComparator<K>()); }
+
+    public AVLTree(Comparator<K> c) { comp = c; }
+
+    private static <E> int height(Node<E> n) { return n == null ? 0 : ((AVLNode<E>) n).height; }
+
+    private static <E> int count(Node<E> n) { return n == null ? 0 : ((AVLNode<E>) n).size; }
+
+    private static <E> void update(Node<E> n) {
+        AVLNode<E> node = (AVLNode<E>) n;
+        node.height = 1 + Math.max(height(n.getLeft()), height(n.getRight()));
+        node.size = 1 + count(n.getLeft()) + count(n.getRight());
+    }
+
+    // O(1) - makes n the root of l and r
+    private static <E> Node<E> link(Node<E> l, Node<E> n, Node<E> r) {
+        n.setLeft(l);
+        n.setRight(r);
+        if (l != null) l.setParent(n);
+        if (r != null) r.setParent(n);
+        n.setParent(null);
+        update(n);
+        return n;
+    }
+
+    // O(|height(l) - height(r)|) - l is the taller side
+    private static <E> Node<E> joinRight(Node<E> l, Node<E> k, Node<E> r) {
+        Node<E> ll = l.getLeft();
+        Node<E> c = l.getRight();
+        if (height(c) <= height(r) + 1) {
+            Node<E> t = link(c, k, r);
+            if (height(t) <= height(ll) + 1)
+                return link(ll, l, t);
+            return rotateUp(link(ll, l, rotateUp(t.getLeft())).getRight());
+        }
+        Node<E> t = joinRight(c, k, r);
+        Node<E> answer = link(ll, l, t);
+        if (height(t) <= height(ll) + 1)
+            return answer;
+        return rotateUp(answer.getRight());
+    }
+
+    // Mirror image of joinRight, r is the taller side
+    private static <E> Node<E> joinLeft(Node<E> l, Node<E> k, Node<E> r) {
+        Node<E> c = r.getLeft();
+        Node<E> rr = r.getRight();
+        if (height(c) <= height(l) + 1) {
+            Node<E> t = link(l, k, c);
+            if (height(t) <= height(rr) + 1)
+                return link(t, r, rr);
+            return rotateUp(link(rotateUp(t.getRight()), r, rr).getLeft());
+        }
+        Node<E> t = joinLeft(l, k, c);
+        Node<E> answer = link(t, r, rr);
+        if (height(t) <= height(rr) + 1)
+            return answer;
+        return rotateUp(answer.getLeft());
+    }
+
+    // Every key in l < key of k < every key in r
+    private static <E> Node<E> join(Node<E> l, Node<E> k, Node<E> r) {
+        if (height(l) > height(r) + 1) return joinRight(l, k, r);
+        if (height(r) > height(l) + 1) return joinLeft(l, k, r);
+        return link(l, k, r);
+    }
+
+    // Joins two trees without a middle key, by taking out the last node of l
+    private static <E> Node<E> join2(Node<E> l, Node<E> r) {
+        if (l == null) return r;
+        ArrayList<Node<E>> last = new ArrayList<>(1);
+        Node<E> rest = splitLast(l, last);
+        return join(rest, last.get(0), r);
+    }
+
+    private static <E> Node<E> splitLast(Node<E> t, List<Node<E>> last) {
+        Node<E> l = t.getLeft();
+        Node<E> r = t.getRight();
+        if (r == null) {
+            last.add(t);
+            if (l != null) l.setParent(null);
+            return l;
+        }
+        r.setParent(null);
+        if (l != null) l.setParent(null);
+        return join(l, t, splitLast(r, last));
+    }
+
+    // Result of splitting a subtree around a key
+    private static class Split<E> {
+        Node<E> less;
+        Node<E> match;
+        Node<E> greater;
+
+        Split(Node<E> less, Node<E> match, Node<E> greater) {
+            this.less = less;
+            this.match = match;
+            this.greater = greater;
+        }
+    }
+
+    // O(log n)
+    private Split<Entry<K,V>> split(Node<Entry<K,V>> t, K key) {
+        if (t == null) return new Split<>(null, null, null);
+        Node<Entry<K,V>> l = t.getLeft();
+        Node<Entry<K,V>> r = t.getRight();
+        if (l != null) l.setParent(null);
+        if (r != null) r.setParent(null);
+        int c = comp.compare(key, t.getElement().getKey());
+        if (c == 0) {
+            link(null, t, null);
+            return new Split<>(l, t, r);
+        } else if (c < 0) {
+            Split<Entry<K,V>> s = split(l, key);
+            s.greater = join(s.greater, t, r);
+            return s;
+        } else {
+            Split<Entry<K,V>> s = split(r, key);
+            s.less = join(l, t, s.less);
+            return s;
+        }
+    }
+
+    // Marks a node that was dropped by a bulk operation as no longer in the tree
+    private static <E> void retire(Node<E> n) {
+        n.setElement(null);
+        n.setLeft(null);
+        n.setRight(null);
+        n.setParent(n);
+    }
+
+    private void adopt(Node<Entry<K,V>> newRoot) {
+        dropAncestorIndex();
+        root = newRoot;
+        if (root != null) root.setParent(null);
+        size = count(newRoot);
+    }
+
+    private AVLTree<K,V> emptyLike() { return new AVLTree<>(comp); }
+
+    // Perfect subtrees are linked as they are, the final fold uses join to keep
+    // every node balanced: O(log^2 n) on top of the O(n) build
+    protected Node<Entry<K,V>> joinSorted(Node<Entry<K,V>> left, Node<Entry<K,V>> middle,
+                                          Node<Entry<K,V>> right) {
+        return join(left, middle, right);
+    }
+
+    // Keys must be strictly increasing, IllegalArgumentException otherwise
+    public void buildFromSorted(Iterator<Entry<K,V>> data)
+        throws IllegalStateException, IllegalArgumentException {
+        super.buildFromSorted(new Iterator<Entry<K,V>>() {
+            private Entry<K,V> previous = null;
+
+            public boolean hasNext() { return data.hasNext(); }
+
+            public Entry<K,V> next() {
+                Entry<K,V> entry = data.next();
+                if (previous != null && comp.compare(previous.getKey(), entry.getKey()) >= 0)
+                    throw new IllegalArgumentException("Keys are not strictly increasing");
+                previous = entry;
+                return entry;
+            }
+        });
+    }
+
+    // O(log n) - the entry with key, or null
+    public Entry<K,V> getEntry(K key) {
+        Node<Entry<K,V>> walk = root;
+        while (walk != null) {
+            int c = comp.compare(key, walk.getElement().getKey());
+            if (c == 0) return walk.getElement();
+            walk = c < 0 ? walk.getLeft() : walk.getRight();
+        }
+        return null;
+    }
+
+    public V get(K key) {
+        Entry<K,V> entry = getEntry(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    // O(log n) - split at key, then join around the new entry
+    public V put(K key, V value) {
+        Split<Entry<K,V>> s = split(root, key);
+        V old = null;
+        Node<Entry<K,V>> middle;
+        if (s.match != null) {
+            old = s.match.getElement().getValue();
+            s.match.setElement(new AbstractMap.MapEntry<>(key, value));
+            middle = s.match;
+        } else
+            middle = createNode(new AbstractMap.MapEntry<>(key, value), null, null, null);
+        adopt(join(s.less, middle, s.greater));
+        return old;
+    }
+
+    // O(log n)
+    public V remove(K key) {
+        Split<Entry<K,V>> s = split(root, key);
+        adopt(join2(s.less, s.greater));
+        if (s.match == null) return null;
+        V old = s.match.getElement().getValue();
+        retire(s.match);
+        return old;
+    }
+
+    // O(|height(left) - height(right)|). Every key of left must be smaller than
+    // entry's key and every key of right larger. left and right are emptied.
+    public static <K,V> AVLTree<K,V> join(AVLTree<K,V> left, Entry<K,V> entry, AVLTree<K,V> right) {
+        AVLTree<K,V> answer = left.emptyLike();
+        Node<Entry<K,V>> middle = answer.createNode(entry, null, null, null);
+        answer.adopt(join(left.root, middle, right.root));
+        left.adopt(null);
+        right.adopt(null);
+        return answer;
+    }
+
+    // O(log n) - moves the entries below key into a new tree at index 0 and the
+    // entries above key into a new tree at index 1; this tree keeps only the
+    // entry equal to key, if there was one.
+    @SuppressWarnings({"unchecked"})
+    public AVLTree<K,V>[] split(K key) {
+        Split<Entry<K,V>> s = split(root, key);
+        AVLTree<K,V> less = emptyLike();
+        AVLTree<K,V> greater = emptyLike();
+        less.adopt(s.less);
+        greater.adopt(s.greater);
+        adopt(s.match);
+        return (AVLTree<K,V>[]) new AVLTree<?,?>[] { less, greater };
+    }
+
+    // O(m log(n/m + 1)) work, halves forked on the common ForkJoinPool.
+    // Both trees are consumed; on equal keys the entry of b wins.
+    public static <K,V> AVLTree<K,V> union(AVLTree<K,V> a, AVLTree<K,V> b) {
+        return bulk(a, b, SetOperation.UNION);
+    }
+
+    // Keeps the entries of a whose key is also in b. Both trees are consumed.
+    public static <K,V> AVLTree<K,V> intersection(AVLTree<K,V> a, AVLTree<K,V> b) {
+        return bulk(a, b, SetOperation.INTERSECTION);
+    }
+
+    // Keeps the entries of a whose key is not in b. Both trees are consumed.
+    public static <K,V> AVLTree<K,V> difference(AVLTree<K,V> a, AVLTree<K,V> b) {
+        return bulk(a, b, SetOperation.DIFFERENCE);
+    }
+
+    private enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+    private static <K,V> AVLTree<K,V> bulk(AVLTree<K,V> a, AVLTree<K,V> b, SetOperation op) {
+        AVLTree<K,V> answer = a.emptyLike();
+        Node<Entry<K,V>> t1 = a.root;
+        Node<Entry<K,V>> t2 = b.root;
+        a.adopt(null);
+        b.adopt(null);
+        RebalanceEvent event = new RebalanceEvent();
+        event.begin();
+        answer.adopt(ForkJoinPool.commonPool().invoke(answer.new BulkTask(t1, t2, op)));
+        traceRebalance(event, answer, op.name().toLowerCase());
+        return answer;
+    }
+
+    // Never serialized, like LinkedBinaryTree.BuildTask
+    private class BulkTask extends RecursiveTask<Node<Entry<K,V>>> {
+        private static final long serialVersionUID = 1L;
+        private transient Node<Entry<K,V>> t1;
+        private transient Node<Entry<K,V>> t2;
+        private SetOperation op;
+
+        BulkTask(Node<Entry<K,V>> t1, Node<Entry<K,V>> t2, SetOperation op) {
+            this.t1 = t1;
+            this.t2 = t2;
+            this.op = op;
+        }
+
+        protected Node<Entry<K,V>> compute() {
+            if (t1 == null)
+                return op == SetOperation.UNION ? t2 : null;
+            if (t2 == null)
+                return op == SetOperation.INTERSECTION ? null : t1;
+
+            int work = count(t1) + count(t2);
+            Node<Entry<K,V>> l2 = t2.getLeft();
+            Node<Entry<K,V>> r2 = t2.getRight();
+            if (l2 != null) l2.setParent(null);
+            if (r2 != null) r2.setParent(null);
+            Split<Entry<K,V>> s = split(t1, t2.getElement().getKey());
+
+            BulkTask left = new BulkTask(s.less, l2, op);
+            BulkTask right = new BulkTask(s.greater, r2, op);
+            Node<Entry<K,V>> l;
+            Node<Entry<K,V>> r;
+            if (work > SEQUENTIAL_THRESHOLD) {
+                left.fork();
+                r = right.compute();
+                l = left.join();
+            } else {
+                l = left.compute();
+                r = right.compute();
+            }
+
+            switch (op) {
+                case UNION:
+                    if (s.match != null) retire(s.match);
+                    return AVLTree.join(l, t2, r);
+                case INTERSECTION:
+                    retire(t2);
+                    return s.match == null ? join2(l, r) : AVLTree.join(l, s.match, r);
+                default:
+                    retire(t2);
+                    if (s.match != null) retire(s.match);
+                    return join2(l, r);
+            }
+        }
+    }
 }
 
 /*
@@ -607,6 +1674,49 @@ public class ArrayToBST
         constructTree(tree, root, mid+1, data.length-1, false, data);
     }
 
+    // O(n) - same shape guarantee for a sorted stream of unknown length
+    public static <E> void constructTree (LinkedBinaryTree<E> tree , Iterator<E> data )
+    {
+        tree.buildFromSorted(data);
+    }
+
+    // Any order, duplicates allowed. data is sorted in place with parallelSort,
+    // the distinct elements are gathered into one new array by chunks on the
+    // common pool (count, prefix sum, copy) and the tree is built from it in
+    // parallel. Returns the number of distinct elements.
+    @SuppressWarnings({"unchecked"})
+    public static <E> int constructTreeParallel (LinkedBinaryTree<E> tree , E [ ] data , Comparator<? super E> comp )
+    {
+        Arrays.parallelSort(data, comp);
+        int n = data.length;
+        int chunks = Math.max(1, Math.min(n / 4096, 4 * ForkJoinPool.getCommonPoolParallelism()));
+        int[] offsets = new int[chunks + 1];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int count = 0;
+            for (int i = (int) ((long) n * c / chunks), end = (int) ((long) n * (c + 1) / chunks); i < end; i++)
+                if (i == 0 || comp.compare(data[i - 1], data[i]) != 0)
+                    count++;
+            offsets[c + 1] = count;
+        });
+        for (int c = 0; c < chunks; c++)
+            offsets[c + 1] += offsets[c];
+
+        E[] distinct = (E[]) Array.newInstance(data.getClass().getComponentType(), offsets[chunks]);
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int out = offsets[c];
+            for (int i = (int) ((long) n * c / chunks), end = (int) ((long) n * (c + 1) / chunks); i < end; i++)
+                if (i == 0 || comp.compare(data[i - 1], data[i]) != 0)
+                    distinct[out++] = data[i];
+        });
+        tree.buildFromSorted(distinct, distinct.length);
+        return distinct.length;
+    }
+
+    public static <E extends Comparable<? super E>> int constructTreeParallel (LinkedBinaryTree<E> tree , E [ ] data )
+    {
+        return constructTreeParallel(tree, data, new DefaultComparator<E>());
+    }
+
     private static <E> void constructTree (LinkedBinaryTree<E> tree, Position<E> parent , int start, int end , boolean left, E [ ] data )
     {
         if(start > end) return;
@@ -630,5 +1740,55 @@ public class ArrayToBST
             System.out.print(pos.getElement() + " ");
 
         System.out.println("\nDelta: " + (array.length - lbt.height(lbt.root)));
+
+        lbt.buildAncestorIndex();
+        Position<Integer> first = lbt.left(lbt.left(lbt.root()));
+        Position<Integer> last = lbt.right(lbt.right(lbt.root()));
+        System.out.println("lca(" + first.getElement() + ", " + last.getElement() + ") = "
+                           + lbt.lca(first, last).getElement() + ", depth " + lbt.depth(last));
+
+        // A plain tree has no subtree sizes: after a split both halves are
+        // estimates, which still add up to the whole
+        Integer[] range = new Integer[1000];
+        for (int i = 0; i < range.length; i++)
+            range[i] = i;
+        LinkedBinaryTree<Integer> plain = new LinkedBinaryTree<>();
+        ArrayToBST.constructTree(plain, range);
+        Spliterator<Integer> suffix = plain.spliterator();
+        Spliterator<Integer> prefix = suffix.trySplit();
+        long estimated = prefix.estimateSize() + suffix.estimateSize();
+        long[] yielded = {0};
+        prefix.forEachRemaining(e -> yielded[0]++);
+        suffix.forEachRemaining(e -> yielded[0]++);
+        if (estimated != range.length || yielded[0] != range.length
+            || prefix.hasCharacteristics(Spliterator.SIZED))
+            throw new IllegalStateException("Split estimates " + estimated + ", yielded " + yielded[0]);
+        System.out.println("split " + range.length + " nodes: estimates add up to " + estimated);
+
+        // Unsorted input with duplicates: serial sort, dedup and build vs the parallel pipeline
+        Random random = new Random(1);
+        Integer[] input = new Integer[2_000_000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = random.nextInt(input.length);
+        for (int round = 0; round < 3; round++) {
+            Integer[] copy = input.clone();
+            long start = System.nanoTime();
+            Arrays.sort(copy);
+            int distinct = 0;
+            for (int i = 0; i < copy.length; i++)
+                if (i == 0 || !copy[i].equals(copy[distinct - 1]))
+                    copy[distinct++] = copy[i];
+            LinkedBinaryTree<Integer> serial = new LinkedBinaryTree<>();
+            ArrayToBST.constructTree(serial, Arrays.copyOf(copy, distinct));
+            long serialTime = System.nanoTime() - start;
+
+            copy = input.clone();
+            start = System.nanoTime();
+            LinkedBinaryTree<Integer> parallel = new LinkedBinaryTree<>();
+            ArrayToBST.constructTreeParallel(parallel, copy);
+            long parallelTime = System.nanoTime() - start;
+            System.out.printf("%d distinct: serial %d ms, parallel %d ms%n", parallel.size(),
+                              serialTime / 1_000_000, parallelTime / 1_000_000);
+        }
     }
 }
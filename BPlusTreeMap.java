@@ -0,0 +1,660 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+// In-memory B+-tree. Entries live only in the leaves: sorted arrays of up to
+// fanout keys and values, linked to their neighbours, so a range scan walks
+// arrays instead of chasing a pointer per entry and a put shifts at most
+// fanout entries instead of half the table. Inner nodes hold up to fanout
+// children and one separator key fewer: every key under children[i] is below
+// keys[i], every key under children[i + 1] is at least keys[i]. All leaves
+// are at the same depth and every node but the root and the last leaf is at
+// least half full. Entries handed out are copies, as keys and values are
+// stored in separate arrays.
+class BPlusTreeMap<K,V> extends AbstractSortedMap<K,V> {
+
+    private static class Node {
+        Object[] keys;
+        int count;               // keys in a leaf, children in an inner node
+    }
+
+    private static class Leaf extends Node {
+        private Object[] values;
+        private Leaf prev;
+        private Leaf next;
+
+        Leaf(int fanout) {
+            keys = new Object[fanout];
+            values = new Object[fanout];
+        }
+    }
+
+    private static class Inner extends Node {
+        private Node[] children;
+
+        Inner(int fanout) {
+            keys = new Object[fanout - 1];
+            children = new Node[fanout];
+        }
+    }
+
+    private int fanout;
+    private int minimum;         // below fanout / 2 a node borrows or merges
+    private Node root = null;
+    private Leaf head = null;
+    private Leaf tail = null;
+    private int height = 0;      // levels, leaves included
+    private int size = 0;
+    private Object promoted;     // separator left over by the last splitInner
+
+    public BPlusTreeMap() { this(64); }
+
+    public BPlusTreeMap(int fanout) {
+        super();
+        setFanout(fanout);
+    }
+
+    public BPlusTreeMap(int fanout, Comparator<K> comp) {
+        super(comp);
+        setFanout(fanout);
+    }
+
+    // O(n log n) - bulk loads a sorted map, e.g. a SortedTableMap, into full
+    // leaves, stepping through it with higherEntry: the table's entrySet()
+    // iterator leaves out the largest key
+    public BPlusTreeMap(SortedMap<K,V> source, int fanout, Comparator<K> comp) {
+        this(fanout, comp);
+        bulkLoad(() -> new Iterator<Entry<K,V>>() {
+            private Entry<K,V> next = source.firstEntry();
+            public boolean hasNext() { return next != null; }
+            public Entry<K,V> next() {
+                if (next == null) throw new NoSuchElementException();
+                Entry<K,V> answer = next;
+                next = source.higherEntry(answer.getKey());
+                return answer;
+            }
+        }, 1.0);
+    }
+
+    private void setFanout(int fanout) throws IllegalArgumentException {
+        if (fanout < 4) throw new IllegalArgumentException("Fan-out must be at least 4");
+        this.fanout = fanout;
+        minimum = fanout / 2;
+    }
+
+    public int size() { return size; }
+
+    public int height() { return height; }
+
+    // Index of key in keys[0, count), or -(insertion point) - 1
+    @SuppressWarnings({"unchecked"})
+    private int search(Object[] keys, int count, K key) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare((K) keys[mid], key);
+            if (c < 0)
+                low = mid + 1;
+            else if (c > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    // The child of inner whose subtree may hold key
+    private int childIndex(Inner inner, K key) {
+        int i = search(inner.keys, inner.count - 1, key);
+        return i >= 0 ? i + 1 : -(i + 1);
+    }
+
+    private Leaf leafFor(K key) {
+        Node node = root;
+        for (int level = 1; level < height; level++) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    // O(log n)
+    @SuppressWarnings({"unchecked"})
+    public V get(K key) throws IllegalArgumentException {
+        checkKey(key);
+        if (root == null) return null;
+        Leaf leaf = leafFor(key);
+        int i = search(leaf.keys, leaf.count, key);
+        return i < 0 ? null : (V) leaf.values[i];
+    }
+
+    // O(fanout * log n) - a full leaf splits in two and the first key of the
+    // new half goes up as a separator, which may split inner nodes up to the
+    // root. A key beyond the last one splits off an almost empty last leaf
+    // instead of halving, so ascending puts leave full leaves behind.
+    @SuppressWarnings({"unchecked"})
+    public V put(K key, V value) throws IllegalArgumentException {
+        checkKey(key);
+        if (root == null) {
+            Leaf leaf = new Leaf(fanout);
+            insertAt(leaf, 0, key, value);
+            root = head = tail = leaf;
+            height = 1;
+            size = 1;
+            return null;
+        }
+        Inner[] path = new Inner[height - 1];
+        int[] slots = new int[height - 1];
+        Leaf leaf = descend(key, path, slots);
+        int i = search(leaf.keys, leaf.count, key);
+        if (i >= 0) {
+            V old = (V) leaf.values[i];
+            leaf.values[i] = value;
+            return old;
+        }
+        i = -(i + 1);
+        size++;
+        if (leaf.count < fanout) {
+            insertAt(leaf, i, key, value);
+            return null;
+        }
+        int at = leaf == tail && i == fanout ? fanout : fanout / 2;
+        Leaf right = splitLeaf(leaf, at);
+        if (i < at)
+            insertAt(leaf, i, key, value);
+        else
+            insertAt(right, i - at, key, value);
+
+        Node child = right;
+        Object separator = right.keys[0];
+        for (int level = height - 2; level >= 0; level--) {
+            Inner parent = path[level];
+            int slot = slots[level] + 1;
+            if (parent.count < fanout) {
+                insertChild(parent, slot, separator, child);
+                return null;
+            }
+            child = splitInner(parent, slot, separator, child);
+            separator = promoted;
+        }
+        Inner top = new Inner(fanout);
+        top.children[0] = root;
+        top.children[1] = child;
+        top.keys[0] = separator;
+        top.count = 2;
+        root = top;
+        height++;
+        return null;
+    }
+
+    // Leaf that may hold key, recording the inner nodes and child slots on the way
+    private Leaf descend(K key, Inner[] path, int[] slots) {
+        Node node = root;
+        for (int level = 0; level < height - 1; level++) {
+            Inner inner = (Inner) node;
+            path[level] = inner;
+            slots[level] = childIndex(inner, key);
+            node = inner.children[slots[level]];
+        }
+        return (Leaf) node;
+    }
+
+    private static void insertAt(Leaf leaf, int i, Object key, Object value) {
+        System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+        System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.count - i);
+        leaf.keys[i] = key;
+        leaf.values[i] = value;
+        leaf.count++;
+    }
+
+    private static void removeAt(Leaf leaf, int i) {
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i - 1);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.count - i - 1);
+        leaf.count--;
+        leaf.keys[leaf.count] = null;
+        leaf.values[leaf.count] = null;
+    }
+
+    // Moves leaf entries [at, count) into a new leaf linked after it
+    private Leaf splitLeaf(Leaf leaf, int at) {
+        Leaf right = new Leaf(fanout);
+        right.count = leaf.count - at;
+        System.arraycopy(leaf.keys, at, right.keys, 0, right.count);
+        System.arraycopy(leaf.values, at, right.values, 0, right.count);
+        Arrays.fill(leaf.keys, at, leaf.count, null);
+        Arrays.fill(leaf.values, at, leaf.count, null);
+        leaf.count = at;
+        link(leaf, right);
+        return right;
+    }
+
+    // Inserts right into the leaf list after left
+    private void link(Leaf left, Leaf right) {
+        right.prev = left;
+        right.next = left.next;
+        if (left.next == null)
+            tail = right;
+        else
+            left.next.prev = right;
+        left.next = right;
+    }
+
+    private void unlink(Leaf leaf) {
+        if (leaf.prev == null) head = leaf.next; else leaf.prev.next = leaf.next;
+        if (leaf.next == null) tail = leaf.prev; else leaf.next.prev = leaf.prev;
+    }
+
+    // child becomes children[slot], separator the key in front of it
+    private static void insertChild(Inner inner, int slot, Object separator, Node child) {
+        System.arraycopy(inner.keys, slot - 1, inner.keys, slot, inner.count - slot);
+        System.arraycopy(inner.children, slot, inner.children, slot + 1, inner.count - slot);
+        inner.keys[slot - 1] = separator;
+        inner.children[slot] = child;
+        inner.count++;
+    }
+
+    // Drops children[slot] and the separator in front of it
+    private static void removeChild(Inner inner, int slot) {
+        System.arraycopy(inner.keys, slot, inner.keys, slot - 1, inner.count - 1 - slot);
+        System.arraycopy(inner.children, slot + 1, inner.children, slot, inner.count - 1 - slot);
+        inner.count--;
+        inner.keys[inner.count - 1] = null;
+        inner.children[inner.count] = null;
+    }
+
+    // Inserts child into a full inner node and moves the upper half of the
+    // fanout + 1 children into a new sibling. The separator between the
+    // halves is left in promoted for the parent.
+    private Inner splitInner(Inner inner, int slot, Object separator, Node child) {
+        Object[] keys = new Object[fanout];
+        Node[] children = new Node[fanout + 1];
+        System.arraycopy(inner.keys, 0, keys, 0, slot - 1);
+        keys[slot - 1] = separator;
+        System.arraycopy(inner.keys, slot - 1, keys, slot, fanout - slot);
+        System.arraycopy(inner.children, 0, children, 0, slot);
+        children[slot] = child;
+        System.arraycopy(inner.children, slot, children, slot + 1, fanout - slot);
+
+        int at = (fanout + 1) / 2;
+        System.arraycopy(keys, 0, inner.keys, 0, at - 1);
+        System.arraycopy(children, 0, inner.children, 0, at);
+        Arrays.fill(inner.keys, at - 1, fanout - 1, null);
+        Arrays.fill(inner.children, at, fanout, null);
+        inner.count = at;
+
+        Inner sibling = new Inner(fanout);
+        System.arraycopy(keys, at, sibling.keys, 0, fanout - at);
+        System.arraycopy(children, at, sibling.children, 0, fanout + 1 - at);
+        sibling.count = fanout + 1 - at;
+        promoted = keys[at - 1];
+        return sibling;
+    }
+
+    // O(fanout * log n) - a node left with fewer than fanout / 2 entries
+    // borrows one from a sibling, or merges with it if the sibling has none
+    // to spare, which removes a child from the parent and may cascade up to
+    // the root. A root with a single child is dropped.
+    @SuppressWarnings({"unchecked"})
+    public V remove(K key) throws IllegalArgumentException {
+        checkKey(key);
+        if (root == null) return null;
+        Inner[] path = new Inner[height - 1];
+        int[] slots = new int[height - 1];
+        Leaf leaf = descend(key, path, slots);
+        int i = search(leaf.keys, leaf.count, key);
+        if (i < 0) return null;
+        V old = (V) leaf.values[i];
+        removeAt(leaf, i);
+        if (--size == 0) {
+            root = head = tail = null;
+            height = 0;
+            return old;
+        }
+        Node node = leaf;
+        for (int level = height - 2; level >= 0 && node.count < minimum; level--) {
+            Inner parent = path[level];
+            int left = Math.max(slots[level] - 1, 0);
+            if (!rebalance(parent, left))
+                break;
+            node = parent;
+        }
+        while (height > 1 && root.count == 1) {
+            root = ((Inner) root).children[0];
+            height--;
+        }
+        return old;
+    }
+
+    // Evens out children[left] and children[left + 1], one of which is short.
+    // Returns true if they were merged, taking a child away from parent.
+    private boolean rebalance(Inner parent, int left) {
+        Node a = parent.children[left];
+        Node b = parent.children[left + 1];
+        if (a.count + b.count <= fanout) {
+            if (a instanceof Leaf)
+                mergeLeaves((Leaf) a, (Leaf) b);
+            else
+                mergeInner((Inner) a, parent.keys[left], (Inner) b);
+            removeChild(parent, left + 1);
+            return true;
+        }
+        if (a instanceof Leaf) {
+            Leaf l = (Leaf) a;
+            Leaf r = (Leaf) b;
+            if (l.count < r.count) {
+                insertAt(l, l.count, r.keys[0], r.values[0]);
+                removeAt(r, 0);
+            } else {
+                insertAt(r, 0, l.keys[l.count - 1], l.values[l.count - 1]);
+                removeAt(l, l.count - 1);
+            }
+            parent.keys[left] = r.keys[0];
+        } else {
+            Inner l = (Inner) a;
+            Inner r = (Inner) b;
+            if (l.count < r.count) {
+                l.keys[l.count - 1] = parent.keys[left];
+                l.children[l.count++] = r.children[0];
+                parent.keys[left] = r.keys[0];
+                System.arraycopy(r.keys, 1, r.keys, 0, r.count - 2);
+                System.arraycopy(r.children, 1, r.children, 0, r.count - 1);
+                r.count--;
+                r.keys[r.count - 1] = null;
+                r.children[r.count] = null;
+            } else {
+                System.arraycopy(r.keys, 0, r.keys, 1, r.count - 1);
+                System.arraycopy(r.children, 0, r.children, 1, r.count);
+                r.keys[0] = parent.keys[left];
+                r.children[0] = l.children[l.count - 1];
+                r.count++;
+                parent.keys[left] = l.keys[l.count - 2];
+                l.count--;
+                l.keys[l.count - 1] = null;
+                l.children[l.count] = null;
+            }
+        }
+        return false;
+    }
+
+    private void mergeLeaves(Leaf l, Leaf r) {
+        System.arraycopy(r.keys, 0, l.keys, l.count, r.count);
+        System.arraycopy(r.values, 0, l.values, l.count, r.count);
+        l.count += r.count;
+        unlink(r);
+    }
+
+    private static void mergeInner(Inner l, Object separator, Inner r) {
+        l.keys[l.count - 1] = separator;
+        System.arraycopy(r.keys, 0, l.keys, l.count, r.count - 1);
+        System.arraycopy(r.children, 0, l.children, l.count, r.count);
+        l.count += r.count;
+    }
+
+    // O(n) - builds the tree bottom-up from entries in strictly increasing key
+    // order: leaves are packed fill * fanout entries full and linked as they
+    // stream in, then each level of inner nodes is laid over the one below.
+    // A fill below 1 leaves room for later puts before leaves split.
+    public void bulkLoad(Iterable<? extends Entry<K,V>> sorted, double fill)
+        throws IllegalArgumentException, IllegalStateException {
+        if (root != null) throw new IllegalStateException("Map is not empty");
+        if (!(fill > 0 && fill <= 1)) throw new IllegalArgumentException("Fill must be in (0, 1]");
+        int perNode = Math.max(minimum, (int) (fill * fanout));
+        ArrayList<Node> level = new ArrayList<>();
+        ArrayList<Object> lows = new ArrayList<>();    // smallest key under each node
+        Leaf first = null;
+        Leaf leaf = null;
+        K previous = null;
+        int n = 0;
+        for (Entry<K,V> e : sorted) {
+            K key = e.getKey();
+            checkKey(key);
+            if (n > 0 && compare(previous, key) >= 0)
+                throw new IllegalArgumentException("Keys are not strictly increasing");
+            if (leaf == null || leaf.count == perNode) {
+                Leaf next = new Leaf(fanout);
+                if (leaf == null)
+                    first = next;
+                else {
+                    leaf.next = next;
+                    next.prev = leaf;
+                }
+                leaf = next;
+                level.add(leaf);
+                lows.add(key);
+            }
+            leaf.keys[leaf.count] = key;
+            leaf.values[leaf.count++] = e.getValue();
+            previous = key;
+            n++;
+        }
+        if (n == 0) return;
+
+        // The last leaf may be short: merge it into its neighbour or split the two evenly
+        if (level.size() > 1 && leaf.count < minimum) {
+            Leaf before = leaf.prev;
+            int total = before.count + leaf.count;
+            if (total <= fanout) {
+                System.arraycopy(leaf.keys, 0, before.keys, before.count, leaf.count);
+                System.arraycopy(leaf.values, 0, before.values, before.count, leaf.count);
+                before.count = total;
+                before.next = null;
+                leaf = before;
+                level.remove(level.size() - 1);
+                lows.remove(lows.size() - 1);
+            } else {
+                int moved = total / 2 - leaf.count;
+                System.arraycopy(leaf.keys, 0, leaf.keys, moved, leaf.count);
+                System.arraycopy(leaf.values, 0, leaf.values, moved, leaf.count);
+                System.arraycopy(before.keys, before.count - moved, leaf.keys, 0, moved);
+                System.arraycopy(before.values, before.count - moved, leaf.values, 0, moved);
+                Arrays.fill(before.keys, before.count - moved, before.count, null);
+                Arrays.fill(before.values, before.count - moved, before.count, null);
+                before.count -= moved;
+                leaf.count += moved;
+                lows.set(lows.size() - 1, leaf.keys[0]);
+            }
+        }
+
+        // Inner levels are known in size, so children are spread evenly
+        int levels = 1;
+        while (level.size() > 1) {
+            int groups = (level.size() + perNode - 1) / perNode;
+            if (groups > 1 && level.size() / groups < minimum)
+                groups = level.size() / minimum;
+            ArrayList<Node> parents = new ArrayList<>(groups);
+            ArrayList<Object> parentLows = new ArrayList<>(groups);
+            int start = 0;
+            for (int g = 0; g < groups; g++) {
+                int end = (int) ((long) level.size() * (g + 1) / groups);
+                Inner inner = new Inner(fanout);
+                for (int c = start; c < end; c++) {
+                    inner.children[c - start] = level.get(c);
+                    if (c > start)
+                        inner.keys[c - start - 1] = lows.get(c);
+                }
+                inner.count = end - start;
+                parents.add(inner);
+                parentLows.add(lows.get(start));
+                start = end;
+            }
+            level = parents;
+            lows = parentLows;
+            levels++;
+        }
+        root = level.get(0);
+        head = first;
+        tail = leaf;
+        height = levels;
+        size = n;
+    }
+
+    private Entry<K,V> entry(Leaf leaf, int i) {
+        return leaf == null ? null : entryAt(leaf, i);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static <K,V> Entry<K,V> entryAt(Leaf leaf, int i) {
+        return new MapEntry<>((K) leaf.keys[i], (V) leaf.values[i]);
+    }
+
+    public Entry<K,V> firstEntry() { return entry(head, 0); }
+
+    public Entry<K,V> lastEntry() { return tail == null ? null : entry(tail, tail.count - 1); }
+
+    // Iterator from the first key >= key (> key if strict), without bound
+    private EntryIterator above(K key, boolean strict) {
+        if (root == null) return new EntryIterator(null, 0, null);
+        Leaf leaf = leafFor(key);
+        int i = search(leaf.keys, leaf.count, key);
+        i = i >= 0 ? (strict ? i + 1 : i) : -(i + 1);
+        if (i == leaf.count) {
+            leaf = leaf.next;
+            i = 0;
+        }
+        return new EntryIterator(leaf, i, null);
+    }
+
+    // Last entry with key <= key (< key if strict), or null
+    private Entry<K,V> below(K key, boolean strict) {
+        if (root == null) return null;
+        Leaf leaf = leafFor(key);
+        int i = search(leaf.keys, leaf.count, key);
+        i = i >= 0 ? (strict ? i - 1 : i) : -(i + 1) - 1;
+        if (i < 0) {
+            leaf = leaf.prev;
+            if (leaf == null) return null;
+            i = leaf.count - 1;
+        }
+        return entryAt(leaf, i);
+    }
+
+    public Entry<K,V> ceilingEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        EntryIterator it = above(key, false);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public Entry<K,V> higherEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        EntryIterator it = above(key, true);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public Entry<K,V> floorEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return below(key, false);
+    }
+
+    public Entry<K,V> lowerEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return below(key, true);
+    }
+
+    public Iterable<Entry<K,V>> entrySet() { return () -> new EntryIterator(head, 0, null); }
+
+    // Lazy view of [fromKey, toKey): one descent, then along the leaf links
+    public Iterable<Entry<K,V>> subMap(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        return () -> {
+            EntryIterator it = above(fromKey, false);
+            it.to = toKey;
+            return it;
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<K,V>> {
+        private Leaf leaf;
+        private int index;
+        private K to;
+
+        EntryIterator(Leaf leaf, int index, K to) {
+            this.leaf = leaf;
+            this.index = index;
+            this.to = to;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public boolean hasNext() {
+            return leaf != null && (to == null || compare((K) leaf.keys[index], to) < 0);
+        }
+
+        public Entry<K,V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry<K,V> answer = entryAt(leaf, index);
+            if (++index == leaf.count) {
+                leaf = leaf.next;
+                index = 0;
+            }
+            return answer;
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = 1 << 21;
+        Random random = new Random(42);
+        ArrayList<Entry<Integer,Integer>> sorted = new ArrayList<>(n);
+        SortedTableMap<Integer,Integer> table = new SortedTableMap<>();
+        for (int i = 0; i < n; i++) {
+            sorted.add(new MapEntry<>(2 * i, i));
+            table.put(2 * i, i);
+        }
+        BPlusTreeMap<Integer,Integer> tree = new BPlusTreeMap<>(64);
+        long start = System.nanoTime();
+        tree.bulkLoad(sorted, 1.0);
+        System.out.printf("bulk loaded %d entries in %d ms, height %d%n", tree.size(),
+                          (System.nanoTime() - start) / 1_000_000, tree.height());
+        BPlusTreeMap<Integer,Integer> copy =
+            new BPlusTreeMap<>(table, 64, new DefaultComparator<Integer>());
+        System.out.printf("copied %d of %d table entries, last %s%n",
+                          copy.size(), table.size(), copy.lastEntry());
+        AVLTree<Integer,Integer> avl = new AVLTree<>();
+        avl.buildFromSorted(sorted.iterator());
+        sorted = null;
+
+        int[] probes = new int[1 << 20];
+        for (int i = 0; i < probes.length; i++)
+            probes[i] = random.nextInt(2 * n);
+        System.out.printf("%d gets: table %d ms, AVL %d ms, B+-tree %d ms%n", probes.length,
+                          time(() -> { for (int p : probes) table.get(p); }),
+                          time(() -> { for (int p : probes) avl.get(p); }),
+                          time(() -> { for (int p : probes) tree.get(p); }));
+
+        // Odd keys are new, every put shifts the table
+        int[] fresh = new int[20000];
+        for (int i = 0; i < fresh.length; i++)
+            fresh[i] = 2 * random.nextInt(n) + 1;
+        System.out.printf("%d puts: table %d ms, AVL %d ms, B+-tree %d ms%n", fresh.length,
+                          time(() -> { for (int k : fresh) table.put(k, k); }),
+                          time(() -> { for (int k : fresh) avl.put(k, k); }),
+                          time(() -> { for (int k : fresh) tree.put(k, k); }));
+
+        System.out.printf("1000 scans of 10000 keys: table %d ms, B+-tree %d ms%n",
+                          time(() -> scans(table, probes)), time(() -> scans(tree, probes)));
+
+        start = System.nanoTime();
+        for (int k : fresh)
+            tree.remove(k);
+        for (int i = 0; i < n; i += 2)
+            tree.remove(2 * i);
+        System.out.printf("removed half the keys in %d ms, height %d, first %s%n",
+                          (System.nanoTime() - start) / 1_000_000, tree.height(), tree.firstEntry());
+    }
+
+    private static long scans(SortedMap<Integer,Integer> map, int[] probes) {
+        long sum = 0;
+        for (int i = 0; i < 1000; i++)
+            for (Entry<Integer,Integer> e : map.subMap(probes[i], probes[i] + 10000))
+                sum += e.getValue();
+        return sum;
+    }
+
+    private static long time(Runnable r) {
+        long start = System.nanoTime();
+        r.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
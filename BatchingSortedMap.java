@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+// Front-end that lets many threads share one SortedTableMap without locking it.
+// Callers enqueue requests on a lock-free queue and get a CompletableFuture;
+// a single owner thread takes whatever has queued up as one batch, applies it
+// and completes the futures. Nothing here uses a monitor, waiting callers
+// park through CompletableFuture, so virtual threads never pin their carrier.
+// A batch of at least mergeThreshold requests is sorted by key (stably, so
+// requests on one key keep their order), resolved per key against one
+// getAll sweep and written back with one mergeSorted pass over the table.
+// Dependent stages attached without an *Async method run on the owner thread
+// and must not wait on this map.
+class BatchingSortedMap<K,V> implements AutoCloseable {
+
+    private static final byte GET = 0;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CALL = 3;
+
+    private static class Request<K,V> {
+        private byte op;
+        private K key;
+        private V value;
+        private Function<SortedTableMap<K,V>,?> call;
+        private CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Request(byte op, K key, V value, Function<SortedTableMap<K,V>,?> call) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+            this.call = call;
+        }
+    }
+
+    private SortedTableMap<K,V> map;
+    private Comparator<K> comp;
+    private int maxBatch;
+    private int mergeThreshold;
+    private ConcurrentLinkedQueue<Request<K,V>> queue = new ConcurrentLinkedQueue<>();
+    private Thread owner;
+    private volatile boolean sleeping = false;
+    private volatile boolean closed = false;
+
+    public BatchingSortedMap() { this(new DefaultComparator<K>(), 4096, 64); }
+
+    public BatchingSortedMap(Comparator<K> comp, int maxBatch, int mergeThreshold) {
+        if (maxBatch < 1 || mergeThreshold < 1)
+            throw new IllegalArgumentException("Batch sizes must be positive");
+        this.map = new SortedTableMap<>(comp);
+        this.comp = comp;
+        this.maxBatch = maxBatch;
+        this.mergeThreshold = mergeThreshold;
+        owner = new Thread(this::run, "sorted-map-owner");
+        owner.setDaemon(true);
+        owner.start();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private <T> CompletableFuture<T> submit(Request<K,V> request) {
+        if (closed) throw new IllegalStateException("Map is closed");
+        queue.add(request);
+        if (sleeping)
+            LockSupport.unpark(owner);
+        else if (closed && !owner.isAlive() && queue.remove(request))
+            request.future.completeExceptionally(new IllegalStateException("Map is closed"));
+        return (CompletableFuture<T>) request.future;
+    }
+
+    private static void checkNotNull(Object o) throws IllegalArgumentException {
+        if (o == null) throw new IllegalArgumentException("Null key or value");
+    }
+
+    public CompletableFuture<V> getAsync(K key) throws IllegalArgumentException {
+        checkNotNull(key);
+        return submit(new Request<>(GET, key, null, null));
+    }
+
+    // Completes with the previous value. Values may not be null.
+    public CompletableFuture<V> putAsync(K key, V value) throws IllegalArgumentException {
+        checkNotNull(key);
+        checkNotNull(value);
+        return submit(new Request<>(PUT, key, value, null));
+    }
+
+    public CompletableFuture<V> removeAsync(K key) throws IllegalArgumentException {
+        checkNotNull(key);
+        return submit(new Request<>(REMOVE, key, null, null));
+    }
+
+    // Runs any other operation (range queries, firstEntry, ...) on the owner
+    // thread, in order with the requests around it. The map must not escape.
+    public <T> CompletableFuture<T> call(Function<SortedTableMap<K,V>,T> operation) {
+        return submit(new Request<>(CALL, null, null, operation));
+    }
+
+    public V get(K key) throws IllegalArgumentException { return getAsync(key).join(); }
+
+    public V put(K key, V value) throws IllegalArgumentException { return putAsync(key, value).join(); }
+
+    public V remove(K key) throws IllegalArgumentException { return removeAsync(key).join(); }
+
+    public int size() { return call(SortedTableMap::size).join(); }
+
+    // Stops the owner once every request submitted so far is answered;
+    // requests racing with close fail with IllegalStateException. Waits out
+    // interrupts and restores the flag afterwards.
+    public void close() {
+        closed = true;
+        LockSupport.unpark(owner);
+        boolean interrupted = false;
+        while (owner.isAlive()) {
+            try {
+                owner.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        Request<K,V> late;
+        while ((late = queue.poll()) != null)
+            late.future.completeExceptionally(new IllegalStateException("Map is closed"));
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void run() {
+        ArrayList<Request<K,V>> batch = new ArrayList<>();
+        while (true) {
+            Request<K,V> request;
+            while (batch.size() < maxBatch && (request = queue.poll()) != null)
+                batch.add(request);
+            if (!batch.isEmpty()) {
+                try {
+                    apply(batch);
+                } catch (Throwable t) {
+                    // Whatever the batch left unanswered fails; the owner carries on
+                    for (Request<K,V> r : batch)
+                        r.future.completeExceptionally(t);
+                }
+                batch.clear();
+                continue;
+            }
+            if (closed && queue.isEmpty()) return;
+            // Announce the nap before the last look, so a submit either sees
+            // sleeping or its request is found here
+            sleeping = true;
+            if (queue.isEmpty() && !closed)
+                LockSupport.park(this);
+            sleeping = false;
+        }
+    }
+
+    private void apply(ArrayList<Request<K,V>> batch) {
+        int calls = 0;
+        for (Request<K,V> r : batch)
+            if (r.op == CALL) calls++;
+        if (batch.size() < mergeThreshold || calls > 0) {
+            for (Request<K,V> r : batch)
+                applyOne(r);
+        } else
+            applyMerged(batch);
+    }
+
+    private void applyOne(Request<K,V> r) {
+        try {
+            Object answer;
+            switch (r.op) {
+                case GET: answer = map.get(r.key); break;
+                case PUT: answer = map.put(r.key, r.value); break;
+                case REMOVE: answer = map.remove(r.key); break;
+                default: answer = r.call.apply(map);
+            }
+            r.future.complete(answer);
+        } catch (Throwable t) {
+            // Errors from a call included, so one request cannot stop the owner
+            r.future.completeExceptionally(t);
+        }
+    }
+
+    // O(b log b + n): requests on the same key are replayed against the value
+    // found by one sorted getAll, and only the final value per key is written
+    @SuppressWarnings({"unchecked"})
+    private void applyMerged(ArrayList<Request<K,V>> batch) {
+        Request<K,V>[] sorted = (Request<K,V>[]) batch.toArray(new Request<?,?>[0]);
+        try {
+            Arrays.sort(sorted, (a, b) -> comp.compare(a.key, b.key));
+        } catch (RuntimeException e) {
+            // Incomparable keys: let each request fail or succeed on its own
+            for (Request<K,V> r : batch)
+                applyOne(r);
+            return;
+        }
+        try {
+            writeMerged(sorted);
+        } catch (RuntimeException e) {
+            // The table may hold part of the batch, so none of it is reported done
+            for (Request<K,V> r : sorted)
+                r.future.completeExceptionally(e);
+        }
+    }
+
+    private void writeMerged(Request<K,V>[] sorted) {
+        ArrayList<K> keys = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++)
+            if (i == 0 || comp.compare(sorted[i - 1].key, sorted[i].key) != 0)
+                keys.add(sorted[i].key);
+        ArrayList<V> current = map.getAll(keys);
+
+        Object[] answers = new Object[sorted.length];
+        ArrayList<K> changedKeys = new ArrayList<>();
+        ArrayList<V> changedValues = new ArrayList<>();
+        int structural = 0;
+        int k = -1;
+        V value = null;
+        boolean changed = false;
+        for (int i = 0; i < sorted.length; i++) {
+            Request<K,V> r = sorted[i];
+            if (i == 0 || comp.compare(sorted[i - 1].key, r.key) != 0) {
+                if (changed) {
+                    changedKeys.add(keys.get(k));
+                    changedValues.add(value);
+                    if ((current.get(k) == null) != (value == null)) structural++;
+                }
+                value = current.get(++k);
+                changed = false;
+            }
+            V before = value;
+            if (r.op == PUT) {
+                value = r.value;
+                changed = true;
+            } else if (r.op == REMOVE && value != null) {
+                value = null;
+                changed = true;
+            }
+            answers[i] = before;
+        }
+        if (changed) {
+            changedKeys.add(keys.get(k));
+            changedValues.add(value);
+            if ((current.get(k) == null) != (value == null)) structural++;
+        }
+        // Few structural changes are cheaper as single shifts than as a full rebuild
+        if (structural < 8)
+            for (int i = 0; i < changedKeys.size(); i++) {
+                if (changedValues.get(i) == null)
+                    map.remove(changedKeys.get(i));
+                else
+                    map.put(changedKeys.get(i), changedValues.get(i));
+            }
+        else
+            map.mergeSorted(changedKeys, changedValues);
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i].future.complete(answers[i]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int callers = 64;
+        int perCaller = 8192;
+        System.out.println("Synchronized table: " + synchronizedThroughput(callers, perCaller) + " ops/ms");
+        System.out.println("Batching front-end: " + batchingThroughput(callers, perCaller) + " ops/ms");
+
+        try (BatchingSortedMap<Integer,Integer> map = new BatchingSortedMap<>()) {
+            CompletableFuture<Object> failed = map.call(m -> { throw new StackOverflowError(); });
+            map.put(1, 1);
+            System.out.println("failing call: " + failed.isCompletedExceptionally()
+                               + ", owner still answers 1 -> " + map.get(1));
+        }
+    }
+
+    // 80% get, 15% put, 5% remove over 100000 keys
+    private static long synchronizedThroughput(int callers, int perCaller) throws Exception {
+        SortedTableMap<Integer,Integer> map = new SortedTableMap<>();
+        return measure(callers, perCaller, (key, op) -> {
+            synchronized (map) {
+                if (op < 80) map.get(key);
+                else if (op < 95) map.put(key, key);
+                else map.remove(key);
+            }
+            return null;
+        });
+    }
+
+    private static long batchingThroughput(int callers, int perCaller) throws Exception {
+        try (BatchingSortedMap<Integer,Integer> map = new BatchingSortedMap<>()) {
+            return measure(callers, perCaller, (key, op) -> {
+                if (op < 80) return map.getAsync(key);
+                else if (op < 95) return map.putAsync(key, key);
+                else return map.removeAsync(key);
+            });
+        }
+    }
+
+    private interface Operation { CompletableFuture<?> apply(int key, int op); }
+
+    // One virtual thread per caller; every caller keeps up to 32 requests in
+    // flight, as a handler fanning out lookups would
+    private static long measure(int callers, int perCaller, Operation operation) throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < callers; c++)
+                pool.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    CompletableFuture<?>[] inFlight = new CompletableFuture<?>[32];
+                    for (int i = 0; i < perCaller; i += inFlight.length) {
+                        for (int j = 0; j < inFlight.length; j++)
+                            inFlight[j] = operation.apply(random.nextInt(100000), random.nextInt(100));
+                        for (CompletableFuture<?> f : inFlight)
+                            if (f != null) f.join();
+                    }
+                    done.addAndGet(perCaller);
+                });
+        }
+        return done.get() * 1_000_000L / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,83 @@
+// Blocked Bloom filter: every element sets all of its bits inside a single
+// 512-bit block (8 longs = one cache line), so a lookup touches one line.
+// Can answer "definitely not present" or "maybe present", never deletes.
+class BloomFilter<E> {
+
+    private static final int BLOCK_WORDS = 8;   // 8 * 64 = 512 bits
+    private static final int BLOCK_BITS = BLOCK_WORDS * 64;
+
+    private long[] bits;
+    private int numBlocks;
+    private int numHashes;
+    private int expectedInsertions;
+    private double falsePositiveRate;
+
+    // O(m) - allocates the bit array
+    public BloomFilter(int expectedInsertions, double falsePositiveRate)
+        throws IllegalArgumentException {
+        if (expectedInsertions < 0)
+            throw new IllegalArgumentException("Negative expected insertions");
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException("False positive rate must be in (0, 1)");
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        this.falsePositiveRate = falsePositiveRate;
+
+        // Classic sizing: m = -n ln p / (ln 2)^2, k = m/n ln 2
+        double m = -this.expectedInsertions * Math.log(falsePositiveRate)
+            / (Math.log(2) * Math.log(2));
+        numBlocks = (int) Math.max(1, Math.ceil(m / BLOCK_BITS));
+        numHashes = (int) Math.round(m / this.expectedInsertions * Math.log(2));
+        numHashes = Math.max(1, Math.min(16, numHashes));
+        bits = new long[numBlocks * BLOCK_WORDS];
+    }
+
+    public int getExpectedInsertions() { return expectedInsertions; }
+
+    public double getFalsePositiveRate() { return falsePositiveRate; }
+
+    // O(k) - one block, k bits
+    public void add(E e) {
+        long h = mix(e);
+        int base = blockOf(h) * BLOCK_WORDS;
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 16) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // O(k) - false means e was never added, true means it probably was
+    public boolean mightContain(E e) {
+        long h = mix(e);
+        int base = blockOf(h) * BLOCK_WORDS;
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 16) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    // O(m)
+    public void clear() {
+        java.util.Arrays.fill(bits, 0L);
+    }
+
+    // Bits inside the block come from the low 9 bits of h1 and h2, that is
+    // bits 0-8 and 16-24 of h, the block from bits 32-63, so the three are independent
+    private int blockOf(long h) {
+        // Multiply-shift instead of modulo
+        return (int) (((h >>> 32) * numBlocks) >>> 32);
+    }
+
+    // Spreads hashCode() over 64 bits (finalizer of SplitMix64)
+    private static long mix(Object e) {
+        long z = (e == null ? 0 : e.hashCode()) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,434 @@
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntBiFunction;
+
+// Bounded cache with a choice of eviction policy.
+// Entries live in a ConcurrentHashMap, so get never locks. The eviction
+// order is kept in intrusive linked lists guarded by one lock; puts and
+// removes take it, while reads are recorded in striped lossy ring buffers
+// that are replayed under the lock when a buffer fills up or the next write
+// comes in. A hit allocates nothing.
+//   LRU      - one access-ordered list
+//   CLOCK    - FIFO with a reference bit (second chance), reads just set the bit
+//   TINY_LFU - W-TinyLFU: a small LRU window in front of a segmented LRU main
+//              area; an entry leaving the window replaces the main victim only
+//              if a count-min sketch estimates it as more frequently used
+class BoundedCache<K,V> extends AbstractMap<K,V> {
+
+    public enum Policy { LRU, CLOCK, TINY_LFU }
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private static final class Node<K,V> implements Entry<K,V> {
+        private final K key;
+        private volatile V value;
+        private int weight;
+        private Node<K,V> prev;
+        private Node<K,V> next;
+        private byte queue;
+        private volatile boolean referenced;
+        private boolean alive = true;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        public K getKey() { return key; }
+        public V getValue() { return value; }
+
+        public String toString() { return "<" + key + ", " + value + ">"; }
+    }
+
+    // Circular list around a sentinel
+    private static final class NodeList<K,V> {
+        private final Node<K,V> sentinel = new Node<>(null, null, 0);
+
+        NodeList() { sentinel.prev = sentinel.next = sentinel; }
+
+        Node<K,V> first() { return sentinel.next == sentinel ? null : sentinel.next; }
+
+        void linkLast(Node<K,V> n) {
+            n.prev = sentinel.prev;
+            n.next = sentinel;
+            sentinel.prev.next = n;
+            sentinel.prev = n;
+        }
+
+        static <K,V> void unlink(Node<K,V> n) {
+            n.prev.next = n.next;
+            n.next.prev = n.prev;
+            n.prev = n.next = null;
+        }
+
+        void moveToLast(Node<K,V> n) {
+            unlink(n);
+            linkLast(n);
+        }
+    }
+
+    // Lossy ring of recent reads; writers claim a slot with a CAS and give up
+    // when the ring is full rather than wait
+    private static final class ReadBuffer<K,V> {
+        private static final int SIZE = 16;
+        private final AtomicReferenceArray<Node<K,V>> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads = 0;
+
+        // False once the ring is full
+        boolean offer(Node<K,V> n) {
+            long w = writes.get();
+            if (w - reads >= SIZE) return false;
+            if (writes.compareAndSet(w, w + 1))
+                slots.lazySet((int) (w & (SIZE - 1)), n);
+            return true;
+        }
+
+        boolean halfFull() { return writes.get() - reads >= SIZE / 2; }
+    }
+
+    // Count-min sketch of 4-bit counters, four per key, halved after every
+    // 10 * maximum additions (the TinyLFU sample) so that old popularity fades
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0x97cb3127L, 0xab7e5a49L, 0x8df7c2b5L, 0xe1c2f3d7L };
+        private final long[] table;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(long maximum) {
+            int length = (int) Math.min(1 << 20, Math.max(16, Long.highestOneBit(Math.max(1, maximum - 1)) << 1));
+            table = new long[length];
+            sampleSize = 10 * (int) Math.min(maximum, Integer.MAX_VALUE / 10);
+        }
+
+        private int index(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        // Nibble i of the 16 counters in a word, spread by the key hash
+        private static int offset(int hash, int i) { return ((hash >>> (i << 3)) & 3) + (i << 2); }
+
+        private static int spread(Object key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key);
+            int answer = 15;
+            for (int i = 0; i < 4; i++) {
+                int shift = offset(hash, i) << 2;
+                answer = Math.min(answer, (int) ((table[index(hash, i)] >>> shift) & 15));
+            }
+            return answer;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key);
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int j = index(hash, i);
+                int shift = offset(hash, i) << 2;
+                if (((table[j] >>> shift) & 15) != 15) {
+                    table[j] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int j = 0; j < table.length; j++)
+                    table[j] = (table[j] >>> 1) & 0x7777777777777777L;
+                additions /= 2;
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<K,Node<K,V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer<K,V>[] readBuffers;
+    private final Policy policy;
+    private final ToIntBiFunction<K,V> weigher;
+    private final long maximum;
+
+    // Guarded by evictionLock
+    private final NodeList<K,V> window = new NodeList<>();
+    private final NodeList<K,V> probation = new NodeList<>();
+    private final NodeList<K,V> protectedList = new NodeList<>();
+    private final FrequencySketch sketch;
+    private final long maxWindow;
+    private final long maxProtected;
+    private long totalWeight = 0;
+    private long windowWeight = 0;
+    private long protectedWeight = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // At most maximumSize entries
+    public BoundedCache(long maximumSize, Policy policy) {
+        this(maximumSize, policy, (k, v) -> 1);
+    }
+
+    // Entries weigh weigher(key, value) >= 0, their total stays at most maximumWeight
+    @SuppressWarnings({"unchecked"})
+    public BoundedCache(long maximumWeight, Policy policy, ToIntBiFunction<K,V> weigher) {
+        if (maximumWeight < 1)
+            throw new IllegalArgumentException("Maximum must be positive");
+        this.maximum = maximumWeight;
+        this.policy = policy;
+        this.weigher = weigher;
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        readBuffers = (ReadBuffer<K,V>[]) new ReadBuffer<?,?>[stripes];
+        for (int i = 0; i < stripes; i++)
+            readBuffers[i] = new ReadBuffer<>();
+        maxWindow = Math.max(1, maximumWeight / 100);
+        maxProtected = (maximumWeight - maxWindow) * 8 / 10;
+        sketch = policy == Policy.TINY_LFU ? new FrequencySketch(maximumWeight) : null;
+    }
+
+    public int size() { return data.size(); }
+
+    // O(1), lock-free
+    public V get(K key) {
+        if (key == null) throw new IllegalArgumentException("Null key");
+        Node<K,V> n = data.get(key);
+        if (n == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(n);
+        return n.value;
+    }
+
+    private void afterRead(Node<K,V> n) {
+        if (policy == Policy.CLOCK) {
+            if (!n.referenced) n.referenced = true;
+            return;
+        }
+        int h = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        ReadBuffer<K,V> buffer = readBuffers[(h >>> 16) & (readBuffers.length - 1)];
+        if ((!buffer.offer(n) || buffer.halfFull()) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // Replays the recorded reads; caller holds evictionLock
+    private void drainReadBuffers() {
+        for (ReadBuffer<K,V> buffer : readBuffers) {
+            long r = buffer.reads;
+            long w = buffer.writes.get();
+            for (; r < w; r++) {
+                Node<K,V> n = buffer.slots.getAndSet((int) (r & (ReadBuffer.SIZE - 1)), null);
+                if (n == null) break;   // claimed but not yet written
+                if (n.alive) onAccess(n);
+            }
+            buffer.reads = r;
+        }
+    }
+
+    // O(1) amortized
+    public V put(K key, V value) {
+        if (key == null) throw new IllegalArgumentException("Null key");
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0) throw new IllegalArgumentException("Negative weight");
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node<K,V> n = data.get(key);
+            if (n != null) {
+                V old = n.value;
+                n.value = value;
+                reweigh(n, weight);
+                onAccess(n);
+                evict();
+                return old;
+            }
+            n = new Node<>(key, value, weight);
+            data.put(key, n);
+            totalWeight += weight;
+            onInsert(n);
+            evict();
+            return null;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public V remove(K key) {
+        if (key == null) throw new IllegalArgumentException("Null key");
+        evictionLock.lock();
+        try {
+            Node<K,V> n = data.get(key);
+            if (n == null) return null;
+            discard(n);
+            return n.value;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void reweigh(Node<K,V> n, int weight) {
+        int delta = weight - n.weight;
+        n.weight = weight;
+        totalWeight += delta;
+        if (policy == Policy.TINY_LFU) {
+            if (n.queue == WINDOW) windowWeight += delta;
+            else if (n.queue == PROTECTED) protectedWeight += delta;
+        }
+    }
+
+    private void onInsert(Node<K,V> n) {
+        switch (policy) {
+            case LRU:
+            case CLOCK:
+                probation.linkLast(n);
+                break;
+            default:
+                sketch.increment(n.key);
+                n.queue = WINDOW;
+                window.linkLast(n);
+                windowWeight += n.weight;
+        }
+    }
+
+    private void onAccess(Node<K,V> n) {
+        switch (policy) {
+            case LRU:
+                probation.moveToLast(n);
+                break;
+            case CLOCK:
+                n.referenced = true;
+                break;
+            default:
+                sketch.increment(n.key);
+                if (n.queue == WINDOW)
+                    window.moveToLast(n);
+                else if (n.queue == PROTECTED)
+                    protectedList.moveToLast(n);
+                else {
+                    // A second hit promotes from probation, demoting the oldest protected entries
+                    NodeList.unlink(n);
+                    n.queue = PROTECTED;
+                    protectedList.linkLast(n);
+                    protectedWeight += n.weight;
+                    while (protectedWeight > maxProtected) {
+                        Node<K,V> demoted = protectedList.first();
+                        NodeList.unlink(demoted);
+                        protectedWeight -= demoted.weight;
+                        demoted.queue = PROBATION;
+                        probation.linkLast(demoted);
+                    }
+                }
+        }
+    }
+
+    private void evict() {
+        if (policy == Policy.TINY_LFU)
+            admitFromWindow();
+        while (totalWeight > maximum) {
+            Node<K,V> victim = probation.first();
+            if (victim == null) victim = protectedList.first();
+            if (victim == null) victim = window.first();
+            if (policy == Policy.CLOCK && victim.referenced) {
+                victim.referenced = false;
+                probation.moveToLast(victim);
+                continue;
+            }
+            evictions.increment();
+            discard(victim);
+        }
+    }
+
+    // Entries pushed out of the window compete with the probation victim
+    private void admitFromWindow() {
+        while (windowWeight > maxWindow) {
+            Node<K,V> candidate = window.first();
+            NodeList.unlink(candidate);
+            windowWeight -= candidate.weight;
+            candidate.queue = PROBATION;
+            probation.linkLast(candidate);
+            if (totalWeight <= maximum) continue;
+            Node<K,V> victim = probation.first();
+            if (victim == candidate) victim = protectedList.first();
+            if (victim == null) continue;
+            evictions.increment();
+            discard(sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate);
+        }
+    }
+
+    private void discard(Node<K,V> n) {
+        data.remove(n.key, n);
+        NodeList.unlink(n);
+        totalWeight -= n.weight;
+        if (n.queue == WINDOW && policy == Policy.TINY_LFU) windowWeight -= n.weight;
+        else if (n.queue == PROTECTED) protectedWeight -= n.weight;
+        n.alive = false;
+    }
+
+    public long hitCount() { return hits.sum(); }
+
+    public long missCount() { return misses.sum(); }
+
+    public long evictionCount() { return evictions.sum(); }
+
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    // Total weight of the entries, equal to size() without a weigher
+    public long weight() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Weakly consistent, does not count as access
+    public Iterable<Entry<K,V>> entrySet() {
+        return () -> new Iterator<Entry<K,V>>() {
+            private Iterator<Node<K,V>> nodes = data.values().iterator();
+            public boolean hasNext() { return nodes.hasNext(); }
+            public Entry<K,V> next() { return nodes.next(); }
+        };
+    }
+
+    public static void main(String[] args) {
+        SortedTableMap<Integer,String> backing = new SortedTableMap<>();
+        for (int i = 0; i < 100_000; i++)
+            backing.put(i, "value" + i);
+
+        for (Policy policy : Policy.values()) {
+            BoundedCache<Integer,String> cache = new BoundedCache<>(1_000, policy);
+            Random random = new Random(42);
+            for (int i = 0; i < 1_000_000; i++) {
+                // Skewed keys with a scan mixed in every 50 requests
+                int key = i % 50 == 0 ? random.nextInt(100_000)
+                                      : (int) (100_000 * Math.pow(random.nextDouble(), 6));
+                if (cache.get(key) == null)
+                    cache.put(key, backing.get(key));
+            }
+            System.out.printf("%-8s hit rate %.3f, evictions %d%n",
+                              policy, cache.hitRate(), cache.evictionCount());
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+// Thread-safe variant of HashMapSet.
+// Elements are spread over lock-striped hash tables. Writers lock only their
+// stripe; readers (contains, iterators) never lock, because chain nodes are
+// immutable and a remove republishes the chain instead of unlinking in place.
+public class ConcurrentHashMapSet<E extends Comparable<E>> implements Set<E> {
+
+    private static final class Node<E> {
+        final E element;
+        final int hash;
+        final Node<E> next;
+
+        Node(E element, int hash, Node<E> next) {
+            this.element = element;
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final class Stripe<E> extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+        volatile AtomicReferenceArray<Node<E>> table = new AtomicReferenceArray<>(16);
+        volatile int count = 0;
+    }
+
+    private final Stripe<E>[] stripes;
+    private final int shift;
+
+    public ConcurrentHashMapSet() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    // concurrencyLevel is rounded up to a power of two
+    @SuppressWarnings({"unchecked"})
+    public ConcurrentHashMapSet(int concurrencyLevel) {
+        int n = 1;
+        while (n < concurrencyLevel && n < (1 << 16))
+            n <<= 1;
+        stripes = (Stripe<E>[]) new Stripe<?>[n];
+        for (int i = 0; i < n; i++)
+            stripes[i] = new Stripe<>();
+        shift = 32 - Integer.numberOfTrailingZeros(n);
+    }
+
+    private static int spread(Object e) {
+        int h = e.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // High bits pick the stripe, low bits pick the bucket inside it
+    private Stripe<E> stripeFor(int hash) {
+        return stripes[shift == 32 ? 0 : hash >>> shift];
+    }
+
+    // O(stripes) - may be stale while other threads are writing
+    public int size() {
+        int total = 0;
+        for (Stripe<E> s : stripes)
+            total += s.count;
+        return total;
+    }
+
+    public boolean isEmpty() {
+        for (Stripe<E> s : stripes)
+            if (s.count != 0) return false;
+        return true;
+    }
+
+    // Expected O(1), locks one stripe
+    public void add(E e) {
+        int hash = spread(e);
+        Stripe<E> s = stripeFor(hash);
+        s.lock();
+        try {
+            AtomicReferenceArray<Node<E>> tab = s.table;
+            int i = hash & (tab.length() - 1);
+            Node<E> head = tab.get(i);
+            for (Node<E> walk = head; walk != null; walk = walk.next)
+                if (walk.hash == hash && walk.element.equals(e))
+                    return;
+            tab.set(i, new Node<>(e, hash, head));
+            s.count = s.count + 1;
+            if (s.count > tab.length() - (tab.length() >>> 2))
+                resize(s);
+        } finally {
+            s.unlock();
+        }
+    }
+
+    // O(stripe size), caller holds the lock. Readers keep using the old table.
+    private void resize(Stripe<E> s) {
+        AtomicReferenceArray<Node<E>> old = s.table;
+        AtomicReferenceArray<Node<E>> tab = new AtomicReferenceArray<>(old.length() * 2);
+        for (int j = 0; j < old.length(); j++)
+            for (Node<E> walk = old.get(j); walk != null; walk = walk.next) {
+                int i = walk.hash & (tab.length() - 1);
+                tab.set(i, new Node<>(walk.element, walk.hash, tab.get(i)));
+            }
+        s.table = tab;
+    }
+
+    // Expected O(1), locks one stripe
+    public void remove(E e) {
+        int hash = spread(e);
+        Stripe<E> s = stripeFor(hash);
+        s.lock();
+        try {
+            AtomicReferenceArray<Node<E>> tab = s.table;
+            int i = hash & (tab.length() - 1);
+            Node<E> head = tab.get(i);
+            Node<E> target = head;
+            while (target != null && !(target.hash == hash && target.element.equals(e)))
+                target = target.next;
+            if (target == null)
+                return;
+            // Copy the nodes in front of target onto its successor
+            Node<E> newHead = target.next;
+            for (Node<E> walk = head; walk != target; walk = walk.next)
+                newHead = new Node<>(walk.element, walk.hash, newHead);
+            tab.set(i, newHead);
+            s.count = s.count - 1;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    // Expected O(1), lock-free
+    public boolean contains(E e) {
+        int hash = spread(e);
+        AtomicReferenceArray<Node<E>> tab = stripeFor(hash).table;
+        for (Node<E> walk = tab.get(hash & (tab.length() - 1)); walk != null; walk = walk.next)
+            if (walk.hash == hash && walk.element.equals(e))
+                return true;
+        return false;
+    }
+
+    // Collects T once, then adds in parallel on the common ForkJoinPool
+    public void addAll(Set<E> T) {
+        if (T instanceof ConcurrentHashMapSet) {
+            ConcurrentHashMapSet<E> other = (ConcurrentHashMapSet<E>) T;
+            IntStream.range(0, other.stripes.length).parallel()
+                .forEach(i -> other.forEachInStripe(i, this::add));
+        } else
+            elementsOf(T).parallelStream().forEach(this::add);
+    }
+
+    // Each stripe is filtered by its own task
+    public void retainAll(Set<E> T) {
+        IntStream.range(0, stripes.length).parallel().forEach(i -> {
+            ArrayList<E> doomed = new ArrayList<>();
+            forEachInStripe(i, e -> { if (!T.contains(e)) doomed.add(e); });
+            for (E e : doomed)
+                remove(e);
+        });
+    }
+
+    public void removeAll(Set<E> T) {
+        if (T instanceof ConcurrentHashMapSet) {
+            ConcurrentHashMapSet<E> other = (ConcurrentHashMapSet<E>) T;
+            IntStream.range(0, other.stripes.length).parallel()
+                .forEach(i -> other.forEachInStripe(i, this::remove));
+        } else
+            elementsOf(T).parallelStream().forEach(this::remove);
+    }
+
+    private static <E> ArrayList<E> elementsOf(Set<E> T) {
+        ArrayList<E> list = new ArrayList<>(T.size());
+        for (E e : T)
+            list.add(e);
+        return list;
+    }
+
+    // Lock-free walk over one stripe, weakly consistent
+    private void forEachInStripe(int i, java.util.function.Consumer<E> action) {
+        AtomicReferenceArray<Node<E>> tab = stripes[i].table;
+        for (int j = 0; j < tab.length(); j++)
+            for (Node<E> walk = tab.get(j); walk != null; walk = walk.next)
+                action.accept(walk.element);
+    }
+
+    // Sorted, weakly consistent: reflects every element present for the whole
+    // snapshot, never locks. O(n log n) on the first call, O(1) per step after.
+    public Iterator<E> iterator() {
+        return new SnapshotIterator();
+    }
+
+    private class SnapshotIterator implements Iterator<E> {
+        private Object[] elements = null;
+        private int next = 0;
+        private E last = null;
+
+        // Deferred until the first call, so creating an iterator is O(1)
+        private void load() {
+            if (elements != null) return;
+            ArrayList<E> buffer = new ArrayList<>(size());
+            for (int i = 0; i < stripes.length; i++)
+                forEachInStripe(i, buffer::add);
+            elements = buffer.toArray();
+            Arrays.sort(elements);
+        }
+
+        public boolean hasNext() {
+            load();
+            return next < elements.length;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        public E next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = (E) elements[next++];
+            return last;
+        }
+
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            ConcurrentHashMapSet.this.remove(last);
+            last = null;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentHashMapSet<Integer> set = new ConcurrentHashMapSet<>();
+        ArrayList<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int id = t;
+            writers.add(new Thread(() -> {
+                for (int i = id; i < 40; i += 4)
+                    set.add(i);
+            }));
+        }
+        for (Thread w : writers) w.start();
+        for (Thread w : writers) w.join();
+
+        ConcurrentHashMapSet<Integer> odds = new ConcurrentHashMapSet<>();
+        for (int i = 1; i < 40; i += 2)
+            odds.add(i);
+
+        for (Integer i : set)
+            System.out.print(i + " ");
+        System.out.println();
+
+        set.removeAll(odds);
+        for (Integer i : set)
+            System.out.print(i + " ");
+        System.out.println();
+
+        set.addAll(odds);
+        set.retainAll(odds);
+        for (Integer i : set)
+            System.out.print(i + " ");
+    }
+}
@@ -0,0 +1,593 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Lock-free skip list (Herlihy & Shavit, with a value field used as the
+// logical-deletion flag, the way java.util.concurrent does it).
+// A node is removed in three steps: its value is CASed to null (the
+// linearization point), its next references are marked top-down, and
+// traversals physically unlink marked nodes as they pass them.
+// Iterators and subMap are weakly consistent: they never throw and see
+// every entry that was present for the whole iteration.
+class ConcurrentSkipListSortedMap<K,V> extends AbstractSortedMap<K,V> {
+
+    private static final int MAX_LEVEL = 31;
+
+    private static final class Node<K,V> {
+        final K key;
+        final AtomicReference<V> value;
+        final AtomicMarkableReference<Node<K,V>>[] next;
+
+        @SuppressWarnings({"unchecked"})
+        Node(K key, V value, int topLevel) {
+            this.key = key;
+            this.value = new AtomicReference<>(value);
+            next = (AtomicMarkableReference<Node<K,V>>[]) new AtomicMarkableReference<?>[topLevel + 1];
+            for (int i = 0; i <= topLevel; i++)
+                next[i] = new AtomicMarkableReference<>(null, false);
+        }
+
+        int topLevel() { return next.length - 1; }
+    }
+
+    // Sentinel, its key is never compared
+    private final Node<K,V> head = new Node<>(null, null, MAX_LEVEL);
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public ConcurrentSkipListSortedMap() { super(); }
+
+    public ConcurrentSkipListSortedMap(Comparator<K> comp) { super(comp); }
+
+    // O(1) - may be stale while other threads are writing
+    public int size() { return size.get(); }
+
+    private static int randomLevel() {
+        // Geometric with p = 1/2, capped at MAX_LEVEL - 1
+        return Integer.numberOfTrailingZeros(
+            ThreadLocalRandom.current().nextInt() | (1 << (MAX_LEVEL - 1)));
+    }
+
+    // Expected O(log n). Fills preds/succs with the neighbours of key on
+    // every level and unlinks marked nodes on the way.
+    // Returns true if a node with key is linked at level 0.
+    private boolean find(K key, Node<K,V>[] preds, Node<K,V>[] succs) {
+        boolean[] marked = {false};
+        retry:
+        while (true) {
+            Node<K,V> pred = head;
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                Node<K,V> curr = pred.next[level].getReference();
+                while (curr != null) {
+                    Node<K,V> succ = curr.next[level].get(marked);
+                    if (marked[0]) {
+                        if (!pred.next[level].compareAndSet(curr, succ, false, false))
+                            continue retry;
+                        curr = succ;
+                    } else if (compare(curr.key, key) < 0) {
+                        pred = curr;
+                        curr = succ;
+                    } else
+                        break;
+                }
+                preds[level] = pred;
+                succs[level] = curr;
+            }
+            return succs[0] != null && compare(key, succs[0].key) == 0;
+        }
+    }
+
+    // Marks every level of node, top-down, so that it cannot gain successors
+    private static <K,V> void mark(Node<K,V> node) {
+        boolean[] marked = {false};
+        for (int level = node.topLevel(); level >= 0; level--) {
+            Node<K,V> succ = node.next[level].get(marked);
+            while (!marked[0]) {
+                node.next[level].attemptMark(succ, true);
+                succ = node.next[level].get(marked);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private Node<K,V>[] newArray() {
+        return (Node<K,V>[]) new Node<?,?>[MAX_LEVEL + 1];
+    }
+
+    // Expected O(log n), wait-free: never writes, skips marked nodes
+    private Node<K,V> lookup(K key) {
+        boolean[] marked = {false};
+        Node<K,V> pred = head;
+        Node<K,V> curr = null;
+        for (int level = MAX_LEVEL; level >= 0; level--) {
+            curr = pred.next[level].getReference();
+            while (curr != null) {
+                Node<K,V> succ = curr.next[level].get(marked);
+                if (marked[0])
+                    curr = succ;
+                else if (compare(curr.key, key) < 0) {
+                    pred = curr;
+                    curr = succ;
+                } else
+                    break;
+            }
+        }
+        return (curr != null && compare(key, curr.key) == 0) ? curr : null;
+    }
+
+    public V get(K key) throws IllegalArgumentException {
+        checkKey(key);
+        Node<K,V> node = lookup(key);
+        return node == null ? null : node.value.get();
+    }
+
+    // Expected O(log n), lock-free
+    public V put(K key, V value) throws IllegalArgumentException {
+        checkKey(key);
+        if (value == null) throw new IllegalArgumentException("Null values are not supported");
+        Node<K,V>[] preds = newArray();
+        Node<K,V>[] succs = newArray();
+        int topLevel = randomLevel();
+        while (true) {
+            if (find(key, preds, succs)) {
+                Node<K,V> node = succs[0];
+                V old = node.value.get();
+                if (old != null && node.value.compareAndSet(old, value))
+                    return old;
+                if (old == null)
+                    mark(node); // help the remover, then retry
+                continue;
+            }
+            Node<K,V> node = new Node<>(key, value, topLevel);
+            for (int level = 0; level <= topLevel; level++)
+                node.next[level].set(succs[level], false);
+            if (!preds[0].next[0].compareAndSet(succs[0], node, false, false))
+                continue;
+            size.incrementAndGet();
+            linkUpperLevels(node, preds, succs);
+            return null;
+        }
+    }
+
+    private void linkUpperLevels(Node<K,V> node, Node<K,V>[] preds, Node<K,V>[] succs) {
+        boolean[] marked = {false};
+        for (int level = 1; level <= node.topLevel(); level++) {
+            while (true) {
+                Node<K,V> old = node.next[level].get(marked);
+                if (marked[0])
+                    return; // removed meanwhile, stop linking
+                if (old != succs[level]
+                    && !node.next[level].compareAndSet(old, succs[level], false, false))
+                    return;
+                if (preds[level].next[level].compareAndSet(succs[level], node, false, false))
+                    break;
+                find(node.key, preds, succs);
+            }
+        }
+    }
+
+    // Expected O(log n), lock-free
+    public V remove(K key) throws IllegalArgumentException {
+        checkKey(key);
+        Node<K,V>[] preds = newArray();
+        Node<K,V>[] succs = newArray();
+        if (!find(key, preds, succs))
+            return null;
+        Node<K,V> node = succs[0];
+        while (true) {
+            V old = node.value.get();
+            if (old == null)
+                return null; // another thread removed it first
+            if (node.value.compareAndSet(old, null)) {
+                size.decrementAndGet();
+                mark(node);
+                find(key, preds, succs); // unlink
+                return old;
+            }
+        }
+    }
+
+    // Entries handed out are snapshots of a live node
+    private Entry<K,V> snapshot(Node<K,V> node) {
+        if (node == null) return null;
+        V v = node.value.get();
+        return v == null ? null : new MapEntry<>(node.key, v);
+    }
+
+    // First live node with key >= key (> key if strict), null key means -infinity.
+    // Continues from the level-0 node the descent stopped at: re-reading
+    // pred.next[0] could pick up a smaller key inserted after pred meanwhile.
+    private Node<K,V> firstAtLeast(K key, boolean strict) {
+        boolean[] marked = {false};
+        Node<K,V> pred = head;
+        Node<K,V> curr = head.next[0].getReference();
+        if (key != null)
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                curr = pred.next[level].getReference();
+                while (curr != null) {
+                    Node<K,V> succ = curr.next[level].get(marked);
+                    if (marked[0])
+                        curr = succ;
+                    else if (compare(curr.key, key) < 0) {
+                        pred = curr;
+                        curr = succ;
+                    } else
+                        break;
+                }
+            }
+        while (curr != null && (curr.value.get() == null
+                                || (strict && compare(curr.key, key) == 0)))
+            curr = curr.next[0].getReference();
+        return curr;
+    }
+
+    // Last live entry with key <= key (< key if strict), null key means +infinity
+    private Entry<K,V> lastAtMost(K key, boolean strict) {
+        boolean[] marked = {false};
+        while (true) {
+            Node<K,V> pred = head;
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                Node<K,V> curr = pred.next[level].getReference();
+                while (curr != null) {
+                    Node<K,V> succ = curr.next[level].get(marked);
+                    if (marked[0]) {
+                        curr = succ;
+                        continue;
+                    }
+                    int c = key == null ? -1 : compare(curr.key, key);
+                    if (c < 0 || (c == 0 && !strict)) {
+                        pred = curr;
+                        curr = succ;
+                    } else
+                        break;
+                }
+            }
+            if (pred == head) return null;
+            Entry<K,V> answer = snapshot(pred);
+            if (answer != null) return answer;
+            // pred was removed after we passed it, search again
+        }
+    }
+
+    public Entry<K,V> firstEntry() {
+        while (true) {
+            Node<K,V> node = firstAtLeast(null, false);
+            if (node == null) return null;
+            Entry<K,V> answer = snapshot(node);
+            if (answer != null) return answer;
+        }
+    }
+
+    public Entry<K,V> lastEntry() { return lastAtMost(null, false); }
+
+    public Entry<K,V> ceilingEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return liveEntry(key, false);
+    }
+
+    public Entry<K,V> higherEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return liveEntry(key, true);
+    }
+
+    private Entry<K,V> liveEntry(K key, boolean strict) {
+        while (true) {
+            Node<K,V> node = firstAtLeast(key, strict);
+            if (node == null) return null;
+            Entry<K,V> answer = snapshot(node);
+            if (answer != null) return answer;
+        }
+    }
+
+    public Entry<K,V> floorEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return lastAtMost(key, false);
+    }
+
+    public Entry<K,V> lowerEntry(K key) throws IllegalArgumentException {
+        checkKey(key);
+        return lastAtMost(key, true);
+    }
+
+    public Iterable<Entry<K,V>> entrySet() { return new EntryIterable(null, null); }
+
+    // Weakly consistent view of [fromKey, toKey), walked lazily
+    public Iterable<Entry<K,V>> subMap(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        return new EntryIterable(fromKey, toKey);
+    }
+
+    private class EntryIterable implements Iterable<Entry<K,V>> {
+        private K from;
+        private K to;
+
+        EntryIterable(K from, K to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public Iterator<Entry<K,V>> iterator() { return new EntryIterator(from, to); }
+    }
+
+    private class EntryIterator implements Iterator<Entry<K,V>> {
+        private K to;
+        private Node<K,V> node;
+        private Entry<K,V> nextEntry;
+
+        EntryIterator(K from, K to) {
+            this.to = to;
+            node = firstAtLeast(from, false);
+            advance();
+        }
+
+        // Moves to the next live node in range and snapshots it
+        private void advance() {
+            nextEntry = null;
+            while (node != null && (to == null || compare(node.key, to) < 0)) {
+                nextEntry = snapshot(node);
+                node = node.next[0].getReference();
+                if (nextEntry != null) return;
+            }
+            node = null;
+        }
+
+        public boolean hasNext() { return nextEntry != null; }
+
+        public Entry<K,V> next() {
+            if (nextEntry == null) throw new NoSuchElementException();
+            Entry<K,V> answer = nextEntry;
+            advance();
+            return answer;
+        }
+    }
+
+    // Stress check and a throughput comparison against a synchronized SortedTableMap
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int perThread = 20000;
+
+        // Each thread owns a disjoint key range, the final map must hold exactly
+        // the keys whose last operation was a put, while all threads also hit
+        // a shared hot key range.
+        ConcurrentSkipListSortedMap<Integer,Integer> map = new ConcurrentSkipListSortedMap<>();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    int key = id * perThread + i;
+                    map.put(key, key);
+                    if (i % 3 == 0) map.remove(key);
+                    int hot = -1 - ThreadLocalRandom.current().nextInt(64);
+                    map.put(hot, id);
+                    map.remove(hot);
+                }
+            }));
+        }
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+
+        int expected = 0;
+        for (int t = 0; t < threads; t++)
+            for (int i = 0; i < perThread; i++)
+                if (i % 3 != 0) {
+                    expected++;
+                    int key = t * perThread + i;
+                    if (!Integer.valueOf(key).equals(map.get(key)))
+                        throw new IllegalStateException("Lost key " + key);
+                }
+        int counted = 0;
+        Integer previous = null;
+        for (Entry<Integer,Integer> e : map.entrySet()) {
+            if (previous != null && previous >= e.getKey())
+                throw new IllegalStateException("Out of order at " + e.getKey());
+            previous = e.getKey();
+            counted++;
+        }
+        System.out.println("Stress: expected " + expected + ", iterated " + counted
+                           + ", size() " + map.size());
+        System.out.println("Linearizable: " + linearizabilityCheck(Math.max(threads, 4), 4, 3000)
+                           + " operations checked");
+        System.out.println("Range queries: " + rangeCheck(Math.max(threads, 4), 20000)
+                           + " checked under concurrent puts and removes");
+
+        System.out.println("Skip list:         "
+                           + throughput(new ConcurrentSkipListSortedMap<>(), threads, false) + " ops/ms");
+        System.out.println("Synchronized table: "
+                           + throughput(new SortedTableMap<>(), threads, true) + " ops/ms");
+    }
+
+    // 90% get, 5% put, 5% remove over 100000 keys for one second
+    private static long throughput(SortedMap<Integer,Integer> map, int threads,
+                                   boolean synchronize) throws InterruptedException {
+        for (int i = 0; i < 100000; i += 2)
+            map.put(i, i);
+        AtomicInteger ops = new AtomicInteger();
+        long deadline = System.currentTimeMillis() + 1000;
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int done = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    for (int i = 0; i < 256; i++) {
+                        int key = random.nextInt(100000);
+                        int op = random.nextInt(100);
+                        if (synchronize)
+                            synchronized (map) { apply(map, key, op); }
+                        else
+                            apply(map, key, op);
+                    }
+                    done += 256;
+                }
+                ops.addAndGet(done);
+            }));
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        return ops.get() / 1000;
+    }
+
+    // One completed call: 0 get, 1 put, 2 remove, timed around the call
+    private static final class Call {
+        int op;
+        Integer argument;
+        Integer result;
+        long start;
+        long end;
+    }
+
+    // Threads race get/put/remove on a few keys with unique values and record
+    // every call. Linearizability is local, so each key's history is checked
+    // on its own against a sequential register: some order of the calls that
+    // respects real time (a call that ended before another started comes
+    // first) must give every call the result it actually returned.
+    private static int linearizabilityCheck(int threads, int keys, int perThread)
+        throws InterruptedException {
+        ConcurrentSkipListSortedMap<Integer,Integer> map = new ConcurrentSkipListSortedMap<>();
+        @SuppressWarnings({"unchecked"})
+        ArrayList<Call>[] histories = (ArrayList<Call>[]) new ArrayList<?>[keys];
+        for (int k = 0; k < keys; k++)
+            histories[k] = new ArrayList<>();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Call[] calls = new Call[perThread];
+                int[] callKeys = new int[perThread];
+                for (int i = 0; i < perThread; i++) {
+                    Call c = new Call();
+                    int key = random.nextInt(keys);
+                    c.op = random.nextInt(3);
+                    c.start = System.nanoTime();
+                    if (c.op == 0)
+                        c.result = map.get(key);
+                    else if (c.op == 1)
+                        c.result = map.put(key, c.argument = id * perThread + i);
+                    else
+                        c.result = map.remove(key);
+                    c.end = System.nanoTime();
+                    calls[i] = c;
+                    callKeys[i] = key;
+                }
+                synchronized (histories) {
+                    for (int i = 0; i < perThread; i++)
+                        histories[callKeys[i]].add(calls[i]);
+                }
+            }));
+        }
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+
+        for (int k = 0; k < keys; k++) {
+            Call[] history = histories[k].toArray(new Call[0]);
+            Arrays.sort(history, (a, b) -> Long.compare(a.start, b.start));
+            if (!linearize(history, new BitSet(history.length), null, new HashSet<>()))
+                throw new IllegalStateException("Key " + k + " has no linearization");
+        }
+        return threads * perThread;
+    }
+
+    // Multiples of 8 in [0, 1024] stay in the map while threads put and remove
+    // the keys between them and run range queries. Whatever else happens, a
+    // ceilingEntry/higherEntry answer must lie above its bound and no further
+    // than the next stable key, and a subMap must be ascending, stay within
+    // [from, to) and contain every stable key in that range.
+    private static int rangeCheck(int threads, int perThread) throws InterruptedException {
+        ConcurrentSkipListSortedMap<Integer,Integer> map = new ConcurrentSkipListSortedMap<>();
+        for (int k = 0; k <= 1024; k += 8)
+            map.put(k, k);
+        ArrayList<Thread> workers = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger queries = new AtomicInteger();
+        for (int t = 0; t < threads; t++)
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    int key = random.nextInt(1024);
+                    int stable = (key + 7) & ~7;
+                    int op = random.nextInt(5);
+                    if (op >= 2) queries.incrementAndGet();
+                    switch (op) {
+                        case 0:
+                            if ((key & 7) != 0) map.put(key, key);
+                            break;
+                        case 1:
+                            if ((key & 7) != 0) map.remove(key);
+                            break;
+                        case 2: {
+                            Entry<Integer,Integer> e = map.ceilingEntry(key);
+                            if (e == null || e.getKey() < key || e.getKey() > stable)
+                                failures.incrementAndGet();
+                            break;
+                        }
+                        case 3: {
+                            Entry<Integer,Integer> e = map.higherEntry(key);
+                            int next = (key & 7) == 0 ? key + 8 : stable;
+                            if (e == null || e.getKey() <= key || e.getKey() > next)
+                                failures.incrementAndGet();
+                            break;
+                        }
+                        default: {
+                            int to = key + 1 + random.nextInt(64);
+                            int expect = stable;
+                            Integer previous = null;
+                            for (Entry<Integer,Integer> e : map.subMap(key, to)) {
+                                int k = e.getKey();
+                                if (k < key || k >= to || (previous != null && previous >= k)
+                                    || k > expect)
+                                    failures.incrementAndGet();
+                                if (k == expect) expect += 8;
+                                previous = k;
+                            }
+                            if (expect < to && expect <= 1024)
+                                failures.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        if (failures.get() > 0)
+            throw new IllegalStateException(failures.get() + " range answers out of bounds");
+        return queries.get();
+    }
+
+    // Wing & Gong search: take any pending call that started before the first
+    // pending call ended, if its result fits the current value. Visited
+    // (done, value) states are memoized, so only real overlap branches.
+    private static boolean linearize(Call[] history, BitSet done, Integer value,
+                                     HashSet<java.util.List<Object>> seen) {
+        int first = done.nextClearBit(0);
+        if (first == history.length) return true;
+        long deadline = Long.MAX_VALUE;
+        for (int i = first; i < history.length && history[i].start <= deadline; i++)
+            if (!done.get(i))
+                deadline = Math.min(deadline, history[i].end);
+        for (int i = first; i < history.length && history[i].start <= deadline; i++) {
+            Call c = history[i];
+            if (done.get(i) || !java.util.Objects.equals(c.result, value)) continue;
+            Integer after = c.op == 0 ? value : c.op == 1 ? c.argument : null;
+            done.set(i);
+            if (seen.add(Arrays.asList(done.clone(), after)) && linearize(history, done, after, seen))
+                return true;
+            done.clear(i);
+        }
+        return false;
+    }
+
+    private static void apply(SortedMap<Integer,Integer> map, int key, int op) {
+        if (op < 90) map.get(key);
+        else if (op < 95) map.put(key, key);
+        else map.remove(key);
+    }
+}
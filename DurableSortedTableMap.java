@@ -0,0 +1,367 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.zip.CRC32;
+
+// Fixed binary encoding of keys or values for the on-disk files
+interface Codec<T> {
+
+    int sizeOf(T value);
+
+    void write(T value, ByteBuffer out);
+
+    T read(ByteBuffer in);
+
+    // Bytes per value when every value takes the same, -1 otherwise
+    default int fixedWidth() { return -1; }
+
+    Codec<Integer> INTEGER = new Codec<Integer>() {
+        public int sizeOf(Integer value) { return 4; }
+        public int fixedWidth() { return 4; }
+        public void write(Integer value, ByteBuffer out) { out.putInt(value); }
+        public Integer read(ByteBuffer in) { return in.getInt(); }
+    };
+
+    Codec<Long> LONG = new Codec<Long>() {
+        public int sizeOf(Long value) { return 8; }
+        public int fixedWidth() { return 8; }
+        public void write(Long value, ByteBuffer out) { out.putLong(value); }
+        public Long read(ByteBuffer in) { return in.getLong(); }
+    };
+
+    // Length-prefixed UTF-8
+    Codec<String> STRING = new Codec<String>() {
+        public int sizeOf(String value) {
+            return 4 + value.getBytes(StandardCharsets.UTF_8).length;
+        }
+        public void write(String value, ByteBuffer out) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+        public String read(ByteBuffer in) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    // Key followed by value, e.g. for the elements of an AVLTree
+    static <K,V> Codec<Entry<K,V>> entry(Codec<K> keys, Codec<V> values) {
+        return new Codec<Entry<K,V>>() {
+            public int sizeOf(Entry<K,V> e) { return keys.sizeOf(e.getKey()) + values.sizeOf(e.getValue()); }
+            public void write(Entry<K,V> e, ByteBuffer out) {
+                keys.write(e.getKey(), out);
+                values.write(e.getValue(), out);
+            }
+            public Entry<K,V> read(ByteBuffer in) {
+                K key = keys.read(in);
+                return new AbstractMap.MapEntry<>(key, values.read(in));
+            }
+            public int fixedWidth() {
+                int k = keys.fixedWidth();
+                int v = values.fixedWidth();
+                return k < 0 || v < 0 ? -1 : k + v;
+            }
+        };
+    }
+}
+
+// SortedTableMap that survives restarts.
+// Every put/remove is appended to a write-ahead log; records are buffered and
+// the log is fsynced once per batch of syncEvery records (group commit), so a
+// crash loses at most the last unsynced batch. checkpoint() writes the whole
+// sorted table sequentially and empties the log. Opening the map memory-maps
+// the checkpoint, loads it with one bulk insert and replays the log tail.
+// Log records are blind writes, so replaying a log whose effects are already
+// in the checkpoint (crash between the two steps of checkpoint) is harmless.
+// Values may not be null: the log has no way to tell a null value from none.
+class DurableSortedTableMap<K,V> extends SortedTableMap<K,V> implements AutoCloseable {
+
+    private static final int MAGIC = 0x44535431; // "DST1"
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte REMOVE_RANGE = 3;
+
+    private Path checkpointFile;
+    private Path logFile;
+    private Codec<K> keyCodec;
+    private Codec<V> valueCodec;
+    private FileChannel log;
+    private ByteBuffer pending = ByteBuffer.allocateDirect(1 << 20);
+    private int syncEvery;
+    private int checkpointEvery;
+    private int unsynced = 0;
+    private int logged = 0;
+    private boolean replaying = false;
+
+    public DurableSortedTableMap(Path directory, Codec<K> keyCodec, Codec<V> valueCodec)
+        throws IOException {
+        this(directory, keyCodec, valueCodec, new DefaultComparator<K>(), 1024, 1_000_000);
+    }
+
+    // syncEvery: records per fsync; checkpointEvery: records before an automatic checkpoint
+    public DurableSortedTableMap(Path directory, Codec<K> keyCodec, Codec<V> valueCodec,
+                                 Comparator<K> comp, int syncEvery, int checkpointEvery)
+        throws IOException {
+        super(comp);
+        if (syncEvery < 1 || checkpointEvery < 1)
+            throw new IllegalArgumentException("Batch sizes must be positive");
+        Files.createDirectories(directory);
+        this.checkpointFile = directory.resolve("checkpoint.dat");
+        this.logFile = directory.resolve("wal.log");
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.syncEvery = syncEvery;
+        this.checkpointEvery = checkpointEvery;
+        recover();
+    }
+
+    public V put(K key, V value) throws IllegalArgumentException {
+        if (value == null) throw new IllegalArgumentException("Null value");
+        V answer = super.put(key, value);
+        if (!replaying)
+            append(PUT, key, null, value);
+        return answer;
+    }
+
+    public V remove(K key) throws IllegalArgumentException {
+        V answer = super.remove(key);
+        if (!replaying && answer != null)
+            append(REMOVE, key, null, null);
+        return answer;
+    }
+
+    public void putRun(ArrayList<K> keys, ArrayList<V> values) throws IllegalArgumentException {
+        if (values.contains(null)) throw new IllegalArgumentException("Null value");
+        super.putRun(keys, values);
+        if (!replaying)
+            for (int i = 0; i < keys.size(); i++)
+                append(PUT, keys.get(i), null, values.get(i));
+    }
+
+    public void mergeSorted(ArrayList<K> keys, ArrayList<V> values) throws IllegalArgumentException {
+        super.mergeSorted(keys, values);
+        if (!replaying)
+            for (int i = 0; i < keys.size(); i++)
+                if (values.get(i) == null)
+                    append(REMOVE, keys.get(i), null, null);
+                else
+                    append(PUT, keys.get(i), null, values.get(i));
+    }
+
+    public int removeRange(K fromKey, K toKey) throws IllegalArgumentException {
+        int removed = super.removeRange(fromKey, toKey);
+        if (!replaying && removed > 0)
+            append(REMOVE_RANGE, fromKey, toKey, null);
+        return removed;
+    }
+
+    // Record: int length, byte type, payload, int CRC32 of type + payload
+    private void append(byte type, K key, K toKey, V value) {
+        int payload = 1 + keyCodec.sizeOf(key)
+            + (toKey != null ? keyCodec.sizeOf(toKey) : 0)
+            + (value != null ? valueCodec.sizeOf(value) : 0);
+        int total = 4 + payload + 4;
+        try {
+            if (pending.remaining() < total) {
+                flush();
+                if (pending.capacity() < total)
+                    pending = ByteBuffer.allocateDirect(Integer.highestOneBit(total) << 1);
+            }
+            int start = pending.position();
+            pending.putInt(payload);
+            pending.put(type);
+            keyCodec.write(key, pending);
+            if (toKey != null) keyCodec.write(toKey, pending);
+            if (value != null) valueCodec.write(value, pending);
+            pending.putInt(crc(pending, start + 4, payload));
+            logged++;
+            if (++unsynced >= syncEvery)
+                sync();
+            if (logged >= checkpointEvery)
+                checkpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(from + length).position(from);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    // Writes buffered records to the log without forcing them to disk
+    private void flush() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining())
+            log.write(pending);
+        pending.clear();
+    }
+
+    // One fsync for every record appended since the last one
+    public void sync() throws IOException {
+        flush();
+        log.force(false);
+        unsynced = 0;
+    }
+
+    // O(n) sequential write to a temporary file, atomically renamed over the
+    // previous checkpoint; then the log is emptied
+    public void checkpoint() throws IOException {
+        sync();
+        Path temp = checkpointFile.resolveSibling("checkpoint.tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(MAGIC);
+            buffer.putInt(size());
+            Iterator<Entry<K,V>> entries = Spliterators.iterator(entrySpliterator());
+            while (entries.hasNext()) {
+                Entry<K,V> entry = entries.next();
+                int need = keyCodec.sizeOf(entry.getKey()) + valueCodec.sizeOf(entry.getValue());
+                if (buffer.remaining() < need) {
+                    drain(buffer, out);
+                    if (buffer.capacity() < need)
+                        buffer = ByteBuffer.allocate(need);
+                }
+                keyCodec.write(entry.getKey(), buffer);
+                valueCodec.write(entry.getValue(), buffer);
+            }
+            drain(buffer, out);
+            out.force(true);
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(checkpointFile.getParent());
+        log.truncate(0);
+        log.position(0);
+        log.force(true);
+        logged = 0;
+    }
+
+    // The rename is only durable once the directory entry is on disk, and the
+    // log must not be emptied before that
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            out.write(buffer);
+        buffer.clear();
+    }
+
+    private void recover() throws IOException {
+        replaying = true;
+        try {
+            if (Files.exists(checkpointFile))
+                loadCheckpoint();
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayLog();
+        } finally {
+            replaying = false;
+        }
+    }
+
+    // Checkpoint entries are already sorted, so they go in as one run
+    private void loadCheckpoint() throws IOException {
+        try (FileChannel in = FileChannel.open(checkpointFile, StandardOpenOption.READ)) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (map.getInt() != MAGIC)
+                throw new IOException("Not a checkpoint file: " + checkpointFile);
+            int n = map.getInt();
+            ArrayList<K> keys = new ArrayList<>(n);
+            ArrayList<V> values = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                keys.add(keyCodec.read(map));
+                values.add(valueCodec.read(map));
+            }
+            super.putRun(keys, values);
+        }
+    }
+
+    // Applies every complete record; a torn or corrupt tail is cut off
+    private void replayLog() throws IOException {
+        long length = log.size();
+        long valid = 0;
+        if (length > 0) {
+            MappedByteBuffer map = log.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            while (map.remaining() >= 4) {
+                int start = map.position();
+                int payload = map.getInt();
+                if (payload < 1 || map.remaining() < payload + 4)
+                    break;
+                int expected = crc(map, start + 4, payload);
+                ByteBuffer record = map.slice(start + 4, payload);
+                map.position(start + 4 + payload);
+                if (map.getInt() != expected)
+                    break;
+                apply(record);
+                valid = map.position();
+                logged++;
+            }
+        }
+        if (valid < length)
+            log.truncate(valid);
+        log.position(valid);
+    }
+
+    private void apply(ByteBuffer record) throws IOException {
+        byte type = record.get();
+        K key = keyCodec.read(record);
+        if (type == PUT)
+            put(key, valueCodec.read(record));
+        else if (type == REMOVE)
+            remove(key);
+        else if (type == REMOVE_RANGE)
+            removeRange(key, keyCodec.read(record));
+        else
+            throw new IOException("Unknown log record type " + type);
+    }
+
+    public void close() throws IOException {
+        sync();
+        log.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("durable-map");
+        try (DurableSortedTableMap<Integer,String> map = new DurableSortedTableMap<>(
+                 directory, Codec.INTEGER, Codec.STRING)) {
+            for (int i = 0; i < 10; i++)
+                map.put(i, "v" + i);
+            map.checkpoint();
+            map.remove(3);
+            map.put(42, "answer");
+        }
+
+        try (DurableSortedTableMap<Integer,String> map = new DurableSortedTableMap<>(
+                 directory, Codec.INTEGER, Codec.STRING)) {
+            System.out.println(map.size() + " entries, 3 -> " + map.get(3) + ", 42 -> " + map.get(42));
+            try {
+                map.put(7, null);
+            } catch (IllegalArgumentException e) {
+                System.out.println("put(7, null) refused, 7 -> " + map.get(7));
+            }
+        }
+    }
+}
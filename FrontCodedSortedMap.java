@@ -0,0 +1,373 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Sorted map for String keys with long shared prefixes (URLs, paths).
+// Keys are kept in sorted blocks of at most 2 * blockSize entries: the first
+// key of a block is stored as a String (the restart key) and every other key
+// as (shared prefix length, suffix bytes) relative to the key before it, in
+// UTF-8. A lookup binary-searches the restart keys and decodes one block.
+// Entries handed out are copies, as keys only exist in encoded form.
+class FrontCodedSortedMap<V> extends AbstractSortedMap<String,V> {
+
+    private static class Block {
+        private String restart;
+        private byte[] data;     // front-coded keys 1 .. count-1
+        private Object[] values;
+        private int count;
+    }
+
+    private ArrayList<Block> blocks = new ArrayList<>();
+    private int blockSize;
+    private int size = 0;
+
+    public FrontCodedSortedMap() { this(16); }
+
+    public FrontCodedSortedMap(int blockSize) {
+        super();
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be positive");
+        this.blockSize = blockSize;
+    }
+
+    public FrontCodedSortedMap(int blockSize, Comparator<String> comp) {
+        super(comp);
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be positive");
+        this.blockSize = blockSize;
+    }
+
+    // O(n log n) - copies a sorted map, e.g. a SortedTableMap<String,V>, into
+    // full blocks. Walks it with higherEntry rather than entrySet(), whose
+    // SortedTableMap iterator stops before the last entry.
+    public FrontCodedSortedMap(SortedMap<String,V> source, int blockSize, Comparator<String> comp) {
+        this(blockSize, comp);
+        ArrayList<String> keys = new ArrayList<>(blockSize);
+        ArrayList<Object> values = new ArrayList<>(blockSize);
+        for (Entry<String,V> e = source.firstEntry(); e != null; e = source.higherEntry(e.getKey())) {
+            size++;
+            keys.add(e.getKey());
+            values.add(e.getValue());
+            if (keys.size() == blockSize) {
+                blocks.add(encode(keys.toArray(new String[0]), values.toArray(), 0, blockSize));
+                keys.clear();
+                values.clear();
+            }
+        }
+        if (!keys.isEmpty())
+            blocks.add(encode(keys.toArray(new String[0]), values.toArray(), 0, keys.size()));
+    }
+
+    public int size() { return size; }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static byte[] utf8(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    // Block holding keys[from, to) and their values
+    private static Block encode(String[] keys, Object[] values, int from, int to) {
+        Block b = new Block();
+        b.restart = keys[from];
+        b.count = to - from;
+        b.values = new Object[b.count];
+        System.arraycopy(values, from, b.values, 0, b.count);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] previous = utf8(keys[from]);
+        for (int i = from + 1; i < to; i++) {
+            byte[] current = utf8(keys[i]);
+            int shared = 0;
+            int limit = Math.min(previous.length, current.length);
+            while (shared < limit && previous[shared] == current[shared])
+                shared++;
+            writeVarint(out, shared);
+            writeVarint(out, current.length - shared);
+            out.write(current, shared, current.length - shared);
+            previous = current;
+        }
+        b.data = out.toByteArray();
+        return b;
+    }
+
+    // Walks the keys of one block in order, rebuilding each from its predecessor
+    private static class Scan {
+        private Block block;
+        private int number;      // position of the block in blocks
+        private int index = 0;
+        private int pos = 0;
+        private byte[] buffer;
+        private int length;
+        private String key;
+
+        Scan(Block block, int number) {
+            this.block = block;
+            this.number = number;
+            key = block.restart;
+            buffer = utf8(key);
+            length = buffer.length;
+        }
+
+        private int readVarint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = block.data[pos++];
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        boolean advance() {
+            if (++index >= block.count) return false;
+            int shared = readVarint();
+            int suffix = readVarint();
+            if (buffer.length < shared + suffix) {
+                byte[] bigger = new byte[Math.max(shared + suffix, buffer.length * 2)];
+                System.arraycopy(buffer, 0, bigger, 0, shared);
+                buffer = bigger;
+            }
+            System.arraycopy(block.data, pos, buffer, shared, suffix);
+            pos += suffix;
+            length = shared + suffix;
+            key = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            return true;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        <V> Entry<String,V> entry() { return new MapEntry<>(key, (V) block.values[index]); }
+    }
+
+    private static String[] decode(Block b) {
+        String[] keys = new String[b.count];
+        Scan scan = new Scan(b, 0);
+        int i = 0;
+        do keys[i++] = scan.key; while (scan.advance());
+        return keys;
+    }
+
+    // O(log(n / blockSize)) - last block whose restart key is <= key, or -1
+    private int blockIndex(String key) {
+        int low = 0, high = blocks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(blocks.get(mid).restart, key) <= 0)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    // O(log n + blockSize)
+    @SuppressWarnings({"unchecked"})
+    public V get(String key) throws IllegalArgumentException {
+        checkKey(key);
+        int i = blockIndex(key);
+        if (i < 0) return null;
+        Scan scan = new Scan(blocks.get(i), i);
+        do {
+            int c = compare(scan.key, key);
+            if (c == 0) return (V) scan.block.values[scan.index];
+            if (c > 0) return null;
+        } while (scan.advance());
+        return null;
+    }
+
+    // O(log n + blockSize) - the block is decoded and re-encoded; a block
+    // reaching 2 * blockSize entries is split in two
+    @SuppressWarnings({"unchecked"})
+    public V put(String key, V value) throws IllegalArgumentException {
+        checkKey(key);
+        if (blocks.isEmpty()) {
+            blocks.add(encode(new String[] {key}, new Object[] {value}, 0, 1));
+            size++;
+            return null;
+        }
+        int i = Math.max(blockIndex(key), 0);
+        Block b = blocks.get(i);
+        String[] keys = decode(b);
+        int j = 0;
+        while (j < keys.length && compare(keys[j], key) < 0)
+            j++;
+        if (j < keys.length && compare(keys[j], key) == 0) {
+            V old = (V) b.values[j];
+            b.values[j] = value;
+            return old;
+        }
+        String[] grownKeys = new String[keys.length + 1];
+        Object[] grownValues = new Object[keys.length + 1];
+        System.arraycopy(keys, 0, grownKeys, 0, j);
+        System.arraycopy(b.values, 0, grownValues, 0, j);
+        grownKeys[j] = key;
+        grownValues[j] = value;
+        System.arraycopy(keys, j, grownKeys, j + 1, keys.length - j);
+        System.arraycopy(b.values, j, grownValues, j + 1, keys.length - j);
+        int n = grownKeys.length;
+        if (n < 2 * blockSize)
+            blocks.set(i, encode(grownKeys, grownValues, 0, n));
+        else {
+            blocks.set(i, encode(grownKeys, grownValues, 0, n / 2));
+            blocks.add(i + 1, encode(grownKeys, grownValues, n / 2, n));
+        }
+        size++;
+        return null;
+    }
+
+    // O(log n + blockSize)
+    @SuppressWarnings({"unchecked"})
+    public V remove(String key) throws IllegalArgumentException {
+        checkKey(key);
+        int i = blockIndex(key);
+        if (i < 0) return null;
+        Block b = blocks.get(i);
+        String[] keys = decode(b);
+        int j = 0;
+        while (j < keys.length && compare(keys[j], key) < 0)
+            j++;
+        if (j == keys.length || compare(keys[j], key) != 0) return null;
+        V old = (V) b.values[j];
+        size--;
+        if (keys.length == 1) {
+            blocks.remove(i);
+            return old;
+        }
+        String[] shrunkKeys = new String[keys.length - 1];
+        Object[] shrunkValues = new Object[keys.length - 1];
+        System.arraycopy(keys, 0, shrunkKeys, 0, j);
+        System.arraycopy(b.values, 0, shrunkValues, 0, j);
+        System.arraycopy(keys, j + 1, shrunkKeys, j, keys.length - j - 1);
+        System.arraycopy(b.values, j + 1, shrunkValues, j, keys.length - j - 1);
+        blocks.set(i, encode(shrunkKeys, shrunkValues, 0, shrunkKeys.length));
+        return old;
+    }
+
+    public Entry<String,V> firstEntry() {
+        return blocks.isEmpty() ? null : new Scan(blocks.get(0), 0).entry();
+    }
+
+    public Entry<String,V> lastEntry() {
+        if (blocks.isEmpty()) return null;
+        Scan scan = new Scan(blocks.get(blocks.size() - 1), blocks.size() - 1);
+        while (scan.advance()) { }
+        scan.index = scan.block.count - 1;
+        return scan.entry();
+    }
+
+    // Scan positioned at the first key >= key (> key if strict), or null
+    private Scan above(String key, boolean strict) {
+        for (int i = Math.max(blockIndex(key), 0); i < blocks.size(); i++) {
+            Scan scan = new Scan(blocks.get(i), i);
+            do {
+                int c = compare(scan.key, key);
+                if (c > 0 || (c == 0 && !strict)) return scan;
+            } while (scan.advance());
+        }
+        return null;
+    }
+
+    // Last entry with key <= key (< key if strict), or null
+    private Entry<String,V> below(String key, boolean strict) {
+        for (int i = blockIndex(key); i >= 0; i--) {
+            Scan scan = new Scan(blocks.get(i), i);
+            Entry<String,V> answer = null;
+            do {
+                int c = compare(scan.key, key);
+                if (c > 0 || (c == 0 && strict)) break;
+                answer = scan.entry();
+            } while (scan.advance());
+            if (answer != null) return answer;
+        }
+        return null;
+    }
+
+    public Entry<String,V> ceilingEntry(String key) throws IllegalArgumentException {
+        checkKey(key);
+        Scan scan = above(key, false);
+        return scan == null ? null : scan.entry();
+    }
+
+    public Entry<String,V> higherEntry(String key) throws IllegalArgumentException {
+        checkKey(key);
+        Scan scan = above(key, true);
+        return scan == null ? null : scan.entry();
+    }
+
+    public Entry<String,V> floorEntry(String key) throws IllegalArgumentException {
+        checkKey(key);
+        return below(key, false);
+    }
+
+    public Entry<String,V> lowerEntry(String key) throws IllegalArgumentException {
+        checkKey(key);
+        return below(key, true);
+    }
+
+    public Iterable<Entry<String,V>> entrySet() {
+        return () -> new EntryIterator(blocks.isEmpty() ? null : new Scan(blocks.get(0), 0), null);
+    }
+
+    // Lazy view of [fromKey, toKey)
+    public Iterable<Entry<String,V>> subMap(String fromKey, String toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        return () -> new EntryIterator(above(fromKey, false), toKey);
+    }
+
+    // Decodes one block at a time
+    private class EntryIterator implements Iterator<Entry<String,V>> {
+        private Scan scan;
+        private String to;
+
+        EntryIterator(Scan start, String to) {
+            scan = start;
+            this.to = to;
+        }
+
+        public boolean hasNext() {
+            return scan != null && (to == null || compare(scan.key, to) < 0);
+        }
+
+        public Entry<String,V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry<String,V> answer = scan.entry();
+            if (!scan.advance()) {
+                int next = scan.number + 1;
+                scan = next < blocks.size() ? new Scan(blocks.get(next), next) : null;
+            }
+            return answer;
+        }
+    }
+
+    // Bytes taken by the encoded keys: UTF-8 restart keys plus front-coded data
+    public long keyBytes() {
+        long total = 0;
+        for (Block b : blocks)
+            total += utf8(b.restart).length + b.data.length;
+        return total;
+    }
+
+    public static void main(String[] args) {
+        SortedTableMap<String,Integer> table = new SortedTableMap<>();
+        String[] hosts = {"https://example.com/", "https://example.org/docs/"};
+        for (int i = 0; i < 20000; i++)
+            table.put(hosts[i % 2] + "api/v1/users/" + (i / 2) + "/profile", i);
+
+        FrontCodedSortedMap<Integer> coded =
+            new FrontCodedSortedMap<>(table, 16, new DefaultComparator<String>());
+        long raw = 0;
+        for (Entry<String,Integer> e = table.firstEntry(); e != null; e = table.higherEntry(e.getKey()))
+            raw += utf8(e.getKey()).length;
+        System.out.println("raw key bytes: " + raw + ", front-coded: " + coded.keyBytes());
+        System.out.println(coded.size() + " of " + table.size() + " entries, last: " + coded.lastEntry());
+
+        String probe = hosts[1] + "api/v1/users/4242/profile";
+        System.out.println(probe + " -> " + coded.get(probe));
+        coded.remove(probe);
+        System.out.println("after remove, ceiling: " + coded.ceilingEntry(probe));
+    }
+}
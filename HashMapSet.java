@@ -1,6 +1,12 @@
-import java.util.HashMap;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 interface Set<E> extends Iterable<E> {
 
@@ -45,46 +51,198 @@ interface Set<E> extends Iterable<E> {
 }
 
 public class HashMapSet<E extends Comparable<E>> implements Set<E> {
-    private HashMap<E, E> container;
+    // Open addressing with Robin Hood probing: elements sit inline in slots,
+    // their spread hash codes in the parallel hashes array. An element never
+    // sits further from its home slot than the element it would displace,
+    // so lookups stop early and removal shifts the run back (no tombstones).
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] slots;
+    private int[] hashes;
+    private int mask;
+    private int count = 0;
+
+    // Optional guard for misses, null when disabled
+    private BloomFilter<E> filter = null;
+    private int removalsBeforeRebuild;
+    private int removals = 0;
 
     public HashMapSet(){
-        container = new HashMap<>();
+        slots = new Object[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    private static int spread(Object e) {
+        int h = e.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // How far the element in slot i sits from its home slot
+    private int distance(int i) {
+        return (i - hashes[i]) & mask;
+    }
+
+    // Expected O(1) - slot of e, or -1
+    private int indexOf(Object e) {
+        int h = spread(e);
+        int i = h & mask;
+        for (int dist = 0; slots[i] != null && distance(i) >= dist; dist++) {
+            if (hashes[i] == h && slots[i].equals(e))
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Places e, known to be absent, swapping with richer elements on the way
+    private void insert(Object e, int h) {
+        int i = h & mask;
+        int dist = 0;
+        while (slots[i] != null) {
+            int existing = distance(i);
+            if (existing < dist) {
+                Object swapElement = slots[i];
+                int swapHash = hashes[i];
+                slots[i] = e;
+                hashes[i] = h;
+                e = swapElement;
+                h = swapHash;
+                dist = existing;
+            }
+            i = (i + 1) & mask;
+            dist++;
+        }
+        slots[i] = e;
+        hashes[i] = h;
+    }
+
+    // O(n) - doubles the table; cached hashes avoid calling hashCode again
+    private void grow() {
+        ShiftEvent event = TraceEvents.SHIFT.isEnabled() ? new ShiftEvent() : null;
+        if (event != null) event.begin();
+        Object[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new Object[oldSlots.length * 2];
+        hashes = new int[oldSlots.length * 2];
+        mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++)
+            if (oldSlots[i] != null)
+                insert(oldSlots[i], oldHashes[i]);
+        if (event != null && count >= TraceEvents.shiftThreshold && event.shouldCommit()) {
+            event.structure = TraceEvents.identity(this);
+            event.size = count;
+            event.operation = "resize";
+            event.moved = count;
+            event.commit();
+        }
+    }
+
+    // Elements in slot order, used where any order will do
+    private Iterable<E> elements() {
+        return () -> new Iterator<E>() {
+            private int i = advance(0);
+
+            private int advance(int from) {
+                while (from < slots.length && slots[from] == null)
+                    from++;
+                return from;
+            }
+
+            public boolean hasNext() { return i < slots.length; }
+
+            @SuppressWarnings({"unchecked"})
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                E answer = (E) slots[i];
+                i = advance(i + 1);
+                return answer;
+            }
+        };
+    }
+
+    // O(n) - builds a filter over the current elements.
+    // After removalsBeforeRebuild removes the filter is rebuilt, since it cannot delete.
+    public void enableBloomFilter(int expectedSize, double falsePositiveRate,
+                                  int removalsBeforeRebuild) throws IllegalArgumentException {
+        if (removalsBeforeRebuild < 1)
+            throw new IllegalArgumentException("Rebuild threshold must be positive");
+        filter = new BloomFilter<>(Math.max(expectedSize, size()), falsePositiveRate);
+        this.removalsBeforeRebuild = removalsBeforeRebuild;
+        rebuildBloomFilter();
+    }
+
+    public void enableBloomFilter(int expectedSize, double falsePositiveRate) {
+        enableBloomFilter(expectedSize, falsePositiveRate, Math.max(1, expectedSize / 4));
+    }
+
+    public void disableBloomFilter() { filter = null; }
+
+    // O(n) - re-adds every element, resized if the set outgrew the filter
+    public void rebuildBloomFilter() {
+        if (filter == null) return;
+        if (size() > filter.getExpectedInsertions())
+            filter = new BloomFilter<>(2 * size(), filter.getFalsePositiveRate());
+        else
+            filter.clear();
+        for (E key : elements())
+            filter.add(key);
+        removals = 0;
     }
 
     // O(1) - returns an int
     public int size() {
-        return container.size();
+        return count;
     }
 
     // O(1) - returns a boolean
     public boolean isEmpty() {
-        return container.isEmpty();
+        return count == 0;
     }
 
-    // Expected O(1), worst case O(n), because it's HashTable.put
+    // Expected O(1), amortized over the doublings
     public void add(E e) {
-        container.put(e, null);
+        if (e == null) throw new IllegalArgumentException("Null elements are not supported");
+        if (indexOf(e) >= 0) return;
+        if (count + 1 > slots.length - (slots.length >>> 3)) // load factor 7/8
+            grow();
+        insert(e, spread(e));
+        count++;
+        if (filter != null) {
+            filter.add(e);
+            if (size() > 2 * filter.getExpectedInsertions())
+                rebuildBloomFilter(); // amortized O(1), capacity doubles
+        }
     }
 
-    // Expected O(1), worst case O(n), because it's HashTable.remove
+    // Expected O(1) - backward shift: the rest of the run moves one slot back
     public void remove(E e) {
-        container.remove(e);
+        if (e == null) return;
+        if (filter != null && !filter.mightContain(e)) return;
+        int i = indexOf(e);
+        if (i < 0) return;
+        int next = (i + 1) & mask;
+        while (slots[next] != null && distance(next) > 0) {
+            slots[i] = slots[next];
+            hashes[i] = hashes[next];
+            i = next;
+            next = (next + 1) & mask;
+        }
+        slots[i] = null;
+        count--;
+        if (filter != null && ++removals >= removalsBeforeRebuild)
+            rebuildBloomFilter();
     }
 
-    // O(n) - traverses through all the keys and return true if a match occurs
+    // Expected O(1) - compares cached hashes before calling equals
     public boolean contains(E e) {
-        for(Map.Entry<E, E> cell : container.entrySet())
-            if (cell.getKey().equals(e))
-                return true;
-
-        return false;
-
-        // If the value of a key was the key itself, this method could work in O(1)
-        //return container.get(e).equals(e);
+        if (e == null) return false;
+        if (filter != null && !filter.mightContain(e))
+            return false;
+        return indexOf(e) >= 0;
     }
 
-    // O(n^2) - traverses through T and adds the value if it's not in the S
-    // n(T.length) times n(contains), add() is O(1)
+    // O(|T|) plus T's iteration - adds the value if it's not in the S
     public void addAll(Set<E> T) {
         for(E val: T)
             if (!contains(val))
@@ -108,18 +266,121 @@ public class HashMapSet<E extends Comparable<E>> implements Set<E> {
         return new ElementsIterator();
     }
 
+    // O(n log n) - sorts a snapshot of the elements (in parallel),
+    // then splits by index range. Reports natural order.
+    @SuppressWarnings({"unchecked"})
+    public Spliterator<E> spliterator() {
+        E[] snapshot = (E[]) new Comparable<?>[count];
+        int k = 0;
+        for (E e : elements())
+            snapshot[k++] = e;
+        Arrays.parallelSort(snapshot);
+        return Spliterators.spliterator(snapshot, Spliterator.ORDERED | Spliterator.SORTED
+                                        | Spliterator.DISTINCT | Spliterator.IMMUTABLE);
+    }
+
+    // Where a batched export stopped: the largest element handed out so far.
+    // Serializable when the elements are; continuing from it yields the
+    // elements above it that are in the set at that time.
+    public static final class ResumeToken<E> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        @SuppressWarnings("serial") // serializable exactly when the elements are
+        private final E after;
+        private final long emitted;
+
+        private ResumeToken(E after, long emitted) {
+            this.after = after;
+            this.emitted = emitted;
+        }
+
+        // Elements handed out before this token, over all resumed runs
+        public long emitted() { return emitted; }
+    }
+
+    // Sorted batches of at most budget elements, from the smallest element
+    public SortedBatches batches(int budget) throws IllegalArgumentException {
+        return new SortedBatches(budget, null);
+    }
+
+    public SortedBatches batches(int budget, ResumeToken<E> from) throws IllegalArgumentException {
+        return new SortedBatches(budget, from);
+    }
+
+    // Middle ground between ElementsIterator (O(n) per element, O(1) memory)
+    // and sorting a snapshot (O(n) memory): each batch is one pass over the
+    // table keeping the budget smallest elements above the previous batch in
+    // a bounded max-heap. O(n log k) per batch of k, O(k) memory.
+    public class SortedBatches implements Iterator<ArrayList<E>> {
+        private int budget;
+        private E after;
+        private long emitted;
+        private ArrayList<E> next = null;
+
+        private SortedBatches(int budget, ResumeToken<E> from) throws IllegalArgumentException {
+            if (budget < 1) throw new IllegalArgumentException("Budget must be positive");
+            this.budget = budget;
+            if (from != null) {
+                after = from.after;
+                emitted = from.emitted;
+            }
+        }
+
+        public boolean hasNext() {
+            if (next == null)
+                next = select();
+            return !next.isEmpty();
+        }
+
+        // Ascending, every element larger than those of earlier batches
+        public ArrayList<E> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            ArrayList<E> answer = next;
+            next = null;
+            after = answer.get(answer.size() - 1);
+            emitted += answer.size();
+            return answer;
+        }
+
+        // Resumes after the last batch returned by next
+        public ResumeToken<E> token() { return new ResumeToken<>(after, emitted); }
+
+        private ArrayList<E> select() {
+            // Never holds more than the set, however large the budget
+            PriorityQueue<E> largestOnTop =
+                new PriorityQueue<>(Math.min(budget, count) + 1, Collections.reverseOrder());
+            for (E e : elements()) {
+                if (after != null && e.compareTo(after) <= 0) continue;
+                if (largestOnTop.size() < budget)
+                    largestOnTop.add(e);
+                else if (e.compareTo(largestOnTop.peek()) < 0) {
+                    largestOnTop.poll();
+                    largestOnTop.add(e);
+                }
+            }
+            ArrayList<E> batch = new ArrayList<>(largestOnTop);
+            Collections.sort(batch);
+            return batch;
+        }
+    }
+
     private class ElementsIterator implements Iterator<E>
     {
         E min = null; // In human language: "from"
         E max = null; // In human language: "to"
 
+        // Times the whole pass, committed once the iterator runs out;
+        // null unless the event is enabled
+        IterationEvent event = TraceEvents.ITERATION.isEnabled() ? new IterationEvent() : null;
+
         // Lazy iterator, knows only "from" and "to" values
         // O(n) - explained inside the method
         public ElementsIterator()
         {
+            if (event != null) event.begin();
+
             // Assign the first element to min and max, to not keep them null
             // O(1) coded like this for simplicity
-            for(E key : container.keySet())
+            for(E key : elements())
             {
                 min = key;
                 max = key;
@@ -127,7 +388,7 @@ public class HashMapSet<E extends Comparable<E>> implements Set<E> {
             }
 
             // Assign actual maximal and minimal values O(n)
-            for(E key : container.keySet())
+            for(E key : elements())
             {
                 if(key.compareTo(min) < 0)
                     min = key;
@@ -139,7 +400,10 @@ public class HashMapSet<E extends Comparable<E>> implements Set<E> {
 
         // O(1), just several comparisons
         public boolean hasNext() {
-            if(max == null) return false;
+            if(max == null) {
+                traceIteration();
+                return false;
+            }
             // One time min can be same as max
             if(min == max) max = null;
             return true;
@@ -153,7 +417,7 @@ public class HashMapSet<E extends Comparable<E>> implements Set<E> {
 
             // Find the lowest value between min and max (max included)
             E secondMin = max;
-            for(E walk: container.keySet())
+            for(E walk: elements())
                 if (walk.compareTo(secondMin) <= 0 && walk.compareTo(min) > 0)
                     secondMin = walk;
 
@@ -161,6 +425,17 @@ public class HashMapSet<E extends Comparable<E>> implements Set<E> {
             min = secondMin;
             return returnValue;
         }
+
+        private void traceIteration() {
+            if (event == null) return;
+            if (event.shouldCommit()) {
+                event.structure = TraceEvents.identity(HashMapSet.this);
+                event.size = size();
+                event.operation = "sorted iteration";
+                event.commit();
+            }
+            event = null;
+        }
     }
 
     public static void main(String[] args)
@@ -212,5 +487,20 @@ public class HashMapSet<E extends Comparable<E>> implements Set<E> {
 
         for(Integer i: set1)
             System.out.print(i+" ");
+        System.out.println();
+
+        // Sorted export in batches of 3, stopped after two batches and resumed
+        HashMapSet<Integer> big = new HashMapSet<>();
+        for (int i = 20; i > 0; i--)
+            big.add(i * 7 % 23);
+        HashMapSet<Integer>.SortedBatches batches = big.batches(3);
+        System.out.println(batches.next() + " " + batches.next());
+        HashMapSet.ResumeToken<Integer> token = batches.token();
+        big.add(1);     // below the token, not revisited
+        big.add(100);
+        batches = big.batches(3, token);
+        while (batches.hasNext())
+            System.out.print(batches.next() + " ");
+        System.out.println("(" + batches.token().emitted() + " in total)");
     }
 }
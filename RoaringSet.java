@@ -0,0 +1,607 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Compressed bitmap set of ints (Roaring layout).
+// A value is split into a 16-bit chunk key and a 16-bit low part; each chunk
+// keeps its low parts in whichever container is smallest:
+//   array  - sorted char[], up to 4096 values
+//   bitmap - 1024 longs, for dense chunks
+//   run    - (start, length - 1) pairs, made by runOptimize()
+// The sign bit is flipped on the way in, so the unsigned chunk order is the
+// same as Integer order and iterator() comes out sorted.
+public class RoaringSet implements Set<Integer> {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int chunks = 0;
+    private int size = 0;
+
+    public RoaringSet() { }
+
+    private static int flip(int x) { return x ^ 0x80000000; }
+
+    private static char high(int u) { return (char) (u >>> 16); }
+
+    private static char low(int u) { return (char) u; }
+
+    // O(log chunks)
+    private int chunkIndex(char key) {
+        int low = 0;
+        int high = chunks - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) low = mid + 1;
+            else if (keys[mid] > key) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    private void insertChunk(int index, char key, Container c) {
+        if (chunks == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * chunks);
+            containers = Arrays.copyOf(containers, 2 * chunks);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunks - index);
+        System.arraycopy(containers, index, containers, index + 1, chunks - index);
+        keys[index] = key;
+        containers[index] = c;
+        chunks++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, chunks - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, chunks - index - 1);
+        containers[--chunks] = null;
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    // O(log chunks + container)
+    public void add(Integer e) {
+        int u = flip(e);
+        int i = chunkIndex(high(u));
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, high(u), new ArrayContainer());
+        }
+        Container c = containers[i];
+        int before = c.cardinality();
+        containers[i] = c.add(low(u));
+        size += containers[i].cardinality() - before;
+    }
+
+    public void remove(Integer e) {
+        int u = flip(e);
+        int i = chunkIndex(high(u));
+        if (i < 0) return;
+        Container c = containers[i];
+        int before = c.cardinality();
+        containers[i] = c.remove(low(u));
+        size -= before - containers[i].cardinality();
+        if (containers[i].cardinality() == 0)
+            removeChunk(i);
+    }
+
+    public boolean contains(Integer e) {
+        int u = flip(e);
+        int i = chunkIndex(high(u));
+        return i >= 0 && containers[i].contains(low(u));
+    }
+
+    // Word-parallel when T is a RoaringSet, element by element otherwise
+    public void addAll(Set<Integer> T) {
+        if (!(T instanceof RoaringSet)) {
+            for (Integer e : T)
+                add(e);
+            return;
+        }
+        RoaringSet other = (RoaringSet) T;
+        RoaringSet answer = new RoaringSet();
+        int i = 0;
+        int j = 0;
+        while (i < chunks || j < other.chunks) {
+            if (j == other.chunks || (i < chunks && keys[i] < other.keys[j]))
+                answer.appendChunk(keys[i], containers[i++]);
+            else if (i == chunks || other.keys[j] < keys[i])
+                answer.appendChunk(other.keys[j], other.containers[j++].copy());
+            else
+                answer.appendChunk(keys[i], containers[i++].or(other.containers[j++]));
+        }
+        takeOver(answer);
+    }
+
+    public void retainAll(Set<Integer> T) {
+        if (!(T instanceof RoaringSet)) {
+            RoaringSet kept = new RoaringSet();
+            for (Integer e : T)
+                if (contains(e))
+                    kept.add(e);
+            takeOver(kept);
+            return;
+        }
+        RoaringSet other = (RoaringSet) T;
+        RoaringSet answer = new RoaringSet();
+        int i = 0;
+        int j = 0;
+        while (i < chunks && j < other.chunks) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (other.keys[j] < keys[i]) j++;
+            else answer.appendChunk(keys[i], containers[i++].and(other.containers[j++]));
+        }
+        takeOver(answer);
+    }
+
+    public void removeAll(Set<Integer> T) {
+        if (!(T instanceof RoaringSet)) {
+            for (Integer e : T)
+                remove(e);
+            return;
+        }
+        RoaringSet other = (RoaringSet) T;
+        RoaringSet answer = new RoaringSet();
+        int i = 0;
+        int j = 0;
+        while (i < chunks) {
+            if (j == other.chunks || keys[i] < other.keys[j])
+                answer.appendChunk(keys[i], containers[i++]);
+            else if (other.keys[j] < keys[i])
+                j++;
+            else
+                answer.appendChunk(keys[i], containers[i++].andNot(other.containers[j++]));
+        }
+        takeOver(answer);
+    }
+
+    // Chunks arrive in increasing key order, empty ones are dropped
+    private void appendChunk(char key, Container c) {
+        if (c.cardinality() == 0) return;
+        insertChunk(chunks, key, c);
+        size += c.cardinality();
+    }
+
+    private void takeOver(RoaringSet other) {
+        keys = other.keys;
+        containers = other.containers;
+        chunks = other.chunks;
+        size = other.size;
+    }
+
+    // O(n) - converts chunks to run containers where that is smaller
+    public void runOptimize() {
+        for (int i = 0; i < chunks; i++)
+            containers[i] = containers[i].optimize();
+    }
+
+    // Lazy and sorted: each step looks up the next value after the last one,
+    // so removing through the iterator (or the set) is safe
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private long next = ceiling(0L);
+            private long last = -1;
+
+            public boolean hasNext() { return next >= 0; }
+
+            public Integer next() {
+                if (next < 0) throw new NoSuchElementException();
+                last = next;
+                next = last == 0xFFFFFFFFL ? -1 : ceiling(last + 1);
+                return flip((int) last);
+            }
+
+            public void remove() {
+                if (last < 0) throw new IllegalStateException();
+                RoaringSet.this.remove(flip((int) last));
+                last = -1;
+            }
+        };
+    }
+
+    // Smallest stored unsigned value >= from, or -1
+    private long ceiling(long from) {
+        int i = chunkIndex(high((int) from));
+        int lowFrom = low((int) from);
+        if (i < 0) {
+            i = -i - 1;
+            lowFrom = 0;
+        }
+        for (; i < chunks; i++, lowFrom = 0) {
+            int v = containers[i].nextValue(lowFrom);
+            if (v >= 0)
+                return ((long) keys[i] << 16) | v;
+        }
+        return -1;
+    }
+
+    // Format: int chunk count, then per chunk a char key, a byte type and the
+    // container body. DataOutput is big-endian on every platform.
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(chunks);
+        for (int i = 0; i < chunks; i++) {
+            out.writeChar(keys[i]);
+            containers[i].write(out);
+        }
+    }
+
+    public static RoaringSet readFrom(DataInput in) throws IOException {
+        RoaringSet set = new RoaringSet();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            char key = in.readChar();
+            set.appendChunk(key, Container.read(in));
+        }
+        return set;
+    }
+
+    private abstract static class Container {
+        static final byte ARRAY = 0;
+        static final byte BITMAP = 1;
+        static final byte RUN = 2;
+
+        abstract int cardinality();
+
+        abstract boolean contains(char x);
+
+        // The returned container replaces this one, it may change type
+        abstract Container add(char x);
+
+        abstract Container remove(char x);
+
+        // Smallest value >= from, or -1
+        abstract int nextValue(int from);
+
+        abstract BitmapContainer toBitmap();
+
+        abstract Container copy();
+
+        abstract void write(DataOutput out) throws IOException;
+
+        Container or(Container other) { return toBitmap().orInPlace(other.toBitmap()).shrink(); }
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer)
+                return ((ArrayContainer) this).intersect((ArrayContainer) other);
+            return toBitmap().andInPlace(other.toBitmap()).shrink();
+        }
+
+        Container andNot(Container other) { return toBitmap().andNotInPlace(other.toBitmap()).shrink(); }
+
+        int runCount() {
+            int runs = 0;
+            int previous = -2;
+            for (int v = nextValue(0); v >= 0; v = nextValue(v + 1)) {
+                if (v != previous + 1) runs++;
+                previous = v;
+                if (v == 0xFFFF) break;
+            }
+            return runs;
+        }
+
+        // Picks the smallest of the three encodings
+        Container optimize() {
+            int runs = runCount();
+            int card = cardinality();
+            int runBytes = 4 * runs;
+            int plainBytes = card <= ARRAY_MAX ? 2 * card : 8192;
+            if (runBytes < plainBytes)
+                return RunContainer.from(this, runs);
+            return toBitmap().shrink();
+        }
+
+        static Container read(DataInput in) throws IOException {
+            byte type = in.readByte();
+            if (type == ARRAY) {
+                ArrayContainer c = new ArrayContainer();
+                c.card = in.readChar() + 1;
+                c.content = new char[c.card];
+                for (int i = 0; i < c.card; i++)
+                    c.content[i] = in.readChar();
+                return c;
+            } else if (type == BITMAP) {
+                BitmapContainer c = new BitmapContainer();
+                for (int i = 0; i < c.words.length; i++)
+                    c.words[i] = in.readLong();
+                c.card = c.count();
+                return c;
+            } else if (type == RUN) {
+                RunContainer c = new RunContainer();
+                c.runs = in.readChar() + 1;
+                c.pairs = new char[2 * c.runs];
+                for (int i = 0; i < c.pairs.length; i++)
+                    c.pairs[i] = in.readChar();
+                for (int i = 0; i < c.runs; i++)
+                    c.card += c.pairs[2 * i + 1] + 1;
+                return c;
+            }
+            throw new IOException("Unknown container type " + type);
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        char[] content = new char[4];
+        int card = 0;
+
+        int cardinality() { return card; }
+
+        boolean contains(char x) { return Arrays.binarySearch(content, 0, card, x) >= 0; }
+
+        Container add(char x) {
+            int i = Arrays.binarySearch(content, 0, card, x);
+            if (i >= 0) return this;
+            if (card == ARRAY_MAX)
+                return toBitmap().add(x);
+            i = -i - 1;
+            if (card == content.length)
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX, 2 * card));
+            System.arraycopy(content, i, content, i + 1, card - i);
+            content[i] = x;
+            card++;
+            return this;
+        }
+
+        Container remove(char x) {
+            int i = Arrays.binarySearch(content, 0, card, x);
+            if (i < 0) return this;
+            System.arraycopy(content, i + 1, content, i, card - i - 1);
+            card--;
+            return this;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xFFFF) return -1;
+            int i = Arrays.binarySearch(content, 0, card, (char) from);
+            if (i < 0) i = -i - 1;
+            return i < card ? content[i] : -1;
+        }
+
+        // Merge of two sorted arrays
+        Container intersect(ArrayContainer other) {
+            ArrayContainer answer = new ArrayContainer();
+            answer.content = new char[Math.min(card, other.card)];
+            int i = 0;
+            int j = 0;
+            while (i < card && j < other.card) {
+                if (content[i] < other.content[j]) i++;
+                else if (content[i] > other.content[j]) j++;
+                else {
+                    answer.content[answer.card++] = content[i];
+                    i++;
+                    j++;
+                }
+            }
+            return answer;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < card; i++)
+                b.words[content[i] >>> 6] |= 1L << content[i];
+            b.card = card;
+            return b;
+        }
+
+        Container copy() {
+            ArrayContainer c = new ArrayContainer();
+            c.content = Arrays.copyOf(content, card);
+            c.card = card;
+            return c;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeByte(ARRAY);
+            out.writeChar(card - 1);
+            for (int i = 0; i < card; i++)
+                out.writeChar(content[i]);
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        long[] words = new long[1024];
+        int card = 0;
+
+        int cardinality() { return card; }
+
+        boolean contains(char x) { return (words[x >>> 6] & (1L << x)) != 0; }
+
+        Container add(char x) {
+            long before = words[x >>> 6];
+            words[x >>> 6] |= 1L << x;
+            if (before != words[x >>> 6]) card++;
+            return this;
+        }
+
+        Container remove(char x) {
+            long before = words[x >>> 6];
+            words[x >>> 6] &= ~(1L << x);
+            if (before != words[x >>> 6]) card--;
+            return card <= ARRAY_MAX ? shrink() : this;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xFFFF) return -1;
+            int w = from >>> 6;
+            long word = words[w] & (-1L << from);
+            while (word == 0) {
+                if (++w == words.length) return -1;
+                word = words[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        int count() {
+            int total = 0;
+            for (long word : words)
+                total += Long.bitCount(word);
+            return total;
+        }
+
+        BitmapContainer orInPlace(BitmapContainer other) {
+            for (int i = 0; i < words.length; i++)
+                words[i] |= other.words[i];
+            card = count();
+            return this;
+        }
+
+        BitmapContainer andInPlace(BitmapContainer other) {
+            for (int i = 0; i < words.length; i++)
+                words[i] &= other.words[i];
+            card = count();
+            return this;
+        }
+
+        BitmapContainer andNotInPlace(BitmapContainer other) {
+            for (int i = 0; i < words.length; i++)
+                words[i] &= ~other.words[i];
+            card = count();
+            return this;
+        }
+
+        // Back to an array once the chunk is sparse enough
+        Container shrink() {
+            if (card > ARRAY_MAX) return this;
+            ArrayContainer a = new ArrayContainer();
+            a.content = new char[Math.max(1, card)];
+            for (int v = nextValue(0); v >= 0; v = nextValue(v + 1))
+                a.content[a.card++] = (char) v;
+            return a;
+        }
+
+        BitmapContainer toBitmap() { return (BitmapContainer) copy(); }
+
+        Container copy() {
+            BitmapContainer c = new BitmapContainer();
+            c.words = words.clone();
+            c.card = card;
+            return c;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeByte(BITMAP);
+            for (long word : words)
+                out.writeLong(word);
+        }
+    }
+
+    private static class RunContainer extends Container {
+        char[] pairs;   // start, length - 1
+        int runs = 0;
+        int card = 0;
+
+        static RunContainer from(Container c, int runCount) {
+            RunContainer r = new RunContainer();
+            r.pairs = new char[2 * runCount];
+            int start = -1;
+            int previous = -2;
+            for (int v = c.nextValue(0); v >= 0; v = v == 0xFFFF ? -1 : c.nextValue(v + 1)) {
+                if (v != previous + 1) {
+                    if (start >= 0) r.close(start, previous);
+                    start = v;
+                }
+                previous = v;
+            }
+            if (start >= 0) r.close(start, previous);
+            return r;
+        }
+
+        private void close(int start, int end) {
+            pairs[2 * runs] = (char) start;
+            pairs[2 * runs + 1] = (char) (end - start);
+            runs++;
+            card += end - start + 1;
+        }
+
+        int cardinality() { return card; }
+
+        // Index of the last run starting at or before x, or -1
+        private int runBefore(int x) {
+            int low = 0;
+            int high = runs - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (pairs[2 * mid] <= x) low = mid + 1;
+                else high = mid - 1;
+            }
+            return high;
+        }
+
+        boolean contains(char x) {
+            int r = runBefore(x);
+            return r >= 0 && x <= pairs[2 * r] + pairs[2 * r + 1];
+        }
+
+        // Runs are read-only, updates go through an array or bitmap
+        Container add(char x) {
+            if (contains(x)) return this;
+            return toBitmap().shrink().add(x);
+        }
+
+        Container remove(char x) {
+            if (!contains(x)) return this;
+            return toBitmap().shrink().remove(x);
+        }
+
+        int nextValue(int from) {
+            if (from > 0xFFFF) return -1;
+            int r = runBefore(from);
+            if (r >= 0 && from <= pairs[2 * r] + pairs[2 * r + 1])
+                return from;
+            return r + 1 < runs ? pairs[2 * (r + 1)] : -1;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int r = 0; r < runs; r++) {
+                int start = pairs[2 * r];
+                int end = start + pairs[2 * r + 1];
+                for (int v = start; v <= end; v++)
+                    b.words[v >>> 6] |= 1L << v;
+            }
+            b.card = card;
+            return b;
+        }
+
+        Container copy() {
+            RunContainer c = new RunContainer();
+            c.pairs = Arrays.copyOf(pairs, 2 * runs);
+            c.runs = runs;
+            c.card = card;
+            return c;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeByte(RUN);
+            out.writeChar(runs - 1);
+            for (int i = 0; i < 2 * runs; i++)
+                out.writeChar(pairs[i]);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        RoaringSet evens = new RoaringSet();
+        RoaringSet range = new RoaringSet();
+        for (int i = -10; i < 20; i += 2)
+            evens.add(i);
+        for (int i = 0; i < 100000; i++)
+            range.add(i);
+        range.runOptimize();
+
+        evens.retainAll(range);
+        for (Integer i : evens)
+            System.out.print(i + " ");
+        System.out.println();
+
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        range.writeTo(new java.io.DataOutputStream(bytes));
+        RoaringSet copy = RoaringSet.readFrom(
+            new java.io.DataInputStream(new java.io.ByteArrayInputStream(bytes.toByteArray())));
+        System.out.println(copy.size() + " values in " + bytes.size() + " bytes");
+    }
+}
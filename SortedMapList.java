@@ -1,6 +1,8 @@
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 interface Map<K,V> {
 
@@ -121,6 +123,12 @@ abstract class AbstractSortedMap<K,V>
         this(new DefaultComparator<K>());
     }
 
+    // True if keys are ordered by compareTo, which hashing-based helpers
+    // need to agree with equals/hashCode
+    protected boolean isNaturalOrder() {
+        return comp instanceof DefaultComparator;
+    }
+
     protected int compare(Entry<K,V> a, Entry<K,V> b) {
         return comp.compare(a.getKey(), b.getKey());
     }
@@ -201,10 +209,59 @@ public class SortedMapList<E> implements List<E>
         return returnValue;
     }
 
+    // O(n + k) - the tail is re-keyed once and the batch goes in with one shift,
+    // instead of k calls to add(i, e) that each re-key the tail
+    @SuppressWarnings({"unchecked"})
+    public void addAll(int index, Iterable<E> elements) throws IndexOutOfBoundsException {
+        checkIndex(index);
+        ArrayList<Integer> keys = new ArrayList<>();
+        ArrayList<E> batch = new ArrayList<>();
+        for (E e : elements) {
+            keys.add(index + batch.size());
+            batch.add(e);
+        }
+        int k = batch.size();
+        if (k == 0) return;
+
+        for (Entry<Integer, E> entry : container.subMap(index, size()))
+            ((AbstractMap.MapEntry<Integer, E>) entry).setKey(entry.getKey() + k);
+
+        if (container instanceof SortedTableMap)
+            ((SortedTableMap<Integer, E>) container).putRun(keys, batch);
+        else
+            for (int i = 0; i < k; i++)
+                container.put(keys.get(i), batch.get(i));
+    }
+
+    // O(n) - removes positions [from, to) with one shift and one re-keying pass
+    @SuppressWarnings({"unchecked"})
+    public void removeRange(int from, int to) throws IndexOutOfBoundsException {
+        int n = size();
+        if (from < 0 || to > n || from > to) throw new IndexOutOfBoundsException();
+        if (from == to) return;
+
+        if (container instanceof SortedTableMap)
+            ((SortedTableMap<Integer, E>) container).removeRange(from, to);
+        else
+            for (int i = from; i < to; i++)
+                container.remove(i);
+
+        for (Entry<Integer, E> entry : container.subMap(to, n))
+            ((AbstractMap.MapEntry<Integer, E>) entry).setKey(entry.getKey() - (to - from));
+    }
+
     public Iterator<E> iterator() {
         return container.values().iterator();
     }
 
+    // Index-range splitting when backed by a SortedTableMap
+    @SuppressWarnings({"unchecked"})
+    public Spliterator<E> spliterator() {
+        if (container instanceof SortedTableMap)
+            return ((SortedTableMap<Integer,E>) container).valueSpliterator();
+        return Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED);
+    }
+
     public void checkIndex(int i) throws IndexOutOfBoundsException
     {
         if (i < 0 || i > size()) throw new IndexOutOfBoundsException();
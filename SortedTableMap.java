@@ -1,15 +1,62 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 class SortedTableMap<K,V> extends AbstractSortedMap<K,V> {
 
     private ArrayList<MapEntry<K,V>> table = new ArrayList<>();
 
+    // Optional guard for misses, null when disabled.
+    // Only for natural ordering: it hashes keys with hashCode, so a custom
+    // comparator equating keys that are not equal would cause false misses.
+    private BloomFilter<K> filter = null;
+    private int removalsBeforeRebuild;
+    private int removals = 0;
+
+    // Interpolation search for numeric keys in natural order
+    private boolean interpolation = false;
+
     public SortedTableMap() { super(); }
 
     public SortedTableMap(Comparator<K> comp) { super(comp); }
 
+    // O(n) - builds a filter over the current keys.
+    // After removalsBeforeRebuild removes the filter is rebuilt, since it cannot delete.
+    public void enableBloomFilter(int expectedSize, double falsePositiveRate,
+                                  int removalsBeforeRebuild)
+        throws IllegalArgumentException, IllegalStateException {
+        if (!isNaturalOrder())
+            throw new IllegalStateException("Bloom filter needs the natural key order");
+        if (removalsBeforeRebuild < 1)
+            throw new IllegalArgumentException("Rebuild threshold must be positive");
+        filter = new BloomFilter<>(Math.max(expectedSize, size()), falsePositiveRate);
+        this.removalsBeforeRebuild = removalsBeforeRebuild;
+        rebuildBloomFilter();
+    }
+
+    public void enableBloomFilter(int expectedSize, double falsePositiveRate) {
+        enableBloomFilter(expectedSize, falsePositiveRate, Math.max(1, expectedSize / 4));
+    }
+
+    public void disableBloomFilter() { filter = null; }
+
+    // O(n) - re-adds every key, resized if the map outgrew the filter
+    public void rebuildBloomFilter() {
+        if (filter == null) return;
+        if (size() > filter.getExpectedInsertions())
+            filter = new BloomFilter<>(2 * size(), filter.getFalsePositiveRate());
+        else
+            filter.clear();
+        for (MapEntry<K,V> entry : table)
+            filter.add(entry.getKey());
+        removals = 0;
+    }
+
     private int findIndex(K key, int low, int high) {
         if (high < low) return high + 1;
         int mid = (low + high) / 2;
@@ -22,31 +69,304 @@ class SortedTableMap<K,V> extends AbstractSortedMap<K,V> {
             return findIndex(key, mid + 1, high);
     }
 
-    private int findIndex(K key) { return findIndex(key, 0, table.size() - 1); }
+    private int findIndex(K key) {
+        if (interpolation && key instanceof Number)
+            return interpolationIndex(((Number) key).doubleValue(), key);
+        return findIndex(key, 0, table.size() - 1);
+    }
+
+    // Only valid when keys are Numbers ordered by their numeric value, so a
+    // map with a custom comparator refuses it.
+    // Expected O(log log n) for uniform keys; falls back to binary search
+    // after O(log n) probes, so never worse than O(log n).
+    public void setInterpolationSearch(boolean enabled) throws IllegalArgumentException {
+        if (enabled && !isNaturalOrder())
+            throw new IllegalArgumentException("Interpolation search needs the natural key order");
+        interpolation = enabled;
+    }
+
+    public boolean isInterpolationSearch() { return interpolation; }
+
+    private int interpolationIndex(double x, K key) {
+        int low = 0;
+        int high = table.size() - 1;
+        int probes = 32 - Integer.numberOfLeadingZeros(table.size());
+        while (low <= high) {
+            if (probes-- == 0)
+                return findIndex(key, low, high);
+            double lowKey = ((Number) table.get(low).getKey()).doubleValue();
+            double highKey = ((Number) table.get(high).getKey()).doubleValue();
+            if (x < lowKey) return low;
+            if (x > highKey) return high + 1;
+            int mid = (highKey == lowKey) ? low
+                : low + (int) ((x - lowKey) / (highKey - lowKey) * (high - low));
+            int comp = compare(key, table.get(mid));
+            if (comp == 0)
+                return mid;
+            else if (comp < 0)
+                high = mid - 1;
+            else
+                low = mid + 1;
+        }
+        return high + 1;
+    }
+
+    // O(log d), d being the distance between the finger and the answer.
+    // Gallops away from the finger, then binary searches the last step.
+    private int fingerIndex(K key, int finger) {
+        int n = table.size();
+        if (n == 0) return 0;
+        finger = Math.max(0, Math.min(finger, n - 1));
+        int step = 1;
+        if (compare(key, table.get(finger)) > 0) {
+            // table[low-1] < key, answer in [low, high]
+            int low = finger + 1;
+            int high = finger + step;
+            while (high < n && compare(key, table.get(high)) > 0) {
+                low = high + 1;
+                step *= 2;
+                high = finger + step;
+            }
+            return findIndex(key, low, Math.min(high, n - 1));
+        } else {
+            // table[high] >= key, answer in [low, high]
+            int high = finger;
+            int low = finger - step;
+            while (low >= 0 && compare(key, table.get(low)) <= 0) {
+                high = low;
+                step *= 2;
+                low = finger - step;
+            }
+            return findIndex(key, Math.max(low + 1, 0), high);
+        }
+    }
+
+    // Returns a cursor that remembers where the last lookup ended
+    public Cursor cursor() { return new Cursor(); }
+
+    // Finger search: lookups near the previous one cost O(1) to O(log d).
+    // Stays valid when the map is modified, the finger is only a hint.
+    public class Cursor {
+        private int finger = 0;
+
+        private int seek(K key) {
+            checkKey(key);
+            int j = fingerIndex(key, finger);
+            finger = j;
+            return j;
+        }
+
+        public V get(K key) throws IllegalArgumentException {
+            int j = seek(key);
+            if (j == size() || compare(key, table.get(j)) != 0) return null;
+            return table.get(j).getValue();
+        }
+
+        public Entry<K,V> ceilingEntry(K key) throws IllegalArgumentException {
+            return safeEntry(seek(key));
+        }
+
+        public Entry<K,V> floorEntry(K key) throws IllegalArgumentException {
+            int j = seek(key);
+            if (j == size() || compare(key, table.get(j)) != 0)
+                j--;
+            return safeEntry(j);
+        }
+
+        public Entry<K,V> higherEntry(K key) throws IllegalArgumentException {
+            int j = seek(key);
+            if (j < size() && compare(key, table.get(j)) == 0)
+                j++;
+            return safeEntry(j);
+        }
+
+        public Entry<K,V> lowerEntry(K key) throws IllegalArgumentException {
+            return safeEntry(seek(key) - 1);
+        }
+    }
 
     public int size() { return table.size(); }
 
     public V get(K key) throws IllegalArgumentException {
         checkKey(key);
+        if (filter != null && !filter.mightContain(key)) return null;
         int j = findIndex(key);
         if (j == size() || compare(key, table.get(j)) != 0) return null;
         return table.get(j).getValue();
     }
 
+    // O(k log k + k log(n/k)) - answers come back in query order.
+    // The queries are sorted, then each search gallops forward from where
+    // the previous one ended, so the table is swept once from left to right.
+    public ArrayList<V> getAll(K[] keys) throws IllegalArgumentException {
+        ArrayList<K> queries = new ArrayList<>(keys.length);
+        for (K key : keys)
+            queries.add(key);
+        return getAll(queries);
+    }
+
+    public ArrayList<V> getAll(Iterable<K> keys) throws IllegalArgumentException {
+        ArrayList<K> queries = new ArrayList<>();
+        for (K key : keys) {
+            checkKey(key);
+            queries.add(key);
+        }
+        Integer[] order = new Integer[queries.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> compare(queries.get(a), queries.get(b)));
+
+        ArrayList<V> answers = new ArrayList<>(Collections.nCopies(order.length, (V) null));
+        int finger = 0;
+        for (int i : order) {
+            K key = queries.get(i);
+            if (filter != null && !filter.mightContain(key)) continue;
+            int j = fingerIndex(key, finger);
+            finger = j;
+            if (j < size() && compare(key, table.get(j)) == 0)
+                answers.set(i, table.get(j).getValue());
+        }
+        return answers;
+    }
+
     public V put(K key, V value) throws IllegalArgumentException {
         checkKey(key);
         int j = findIndex(key);
         if (j < size() && compare(key, table.get(j)) == 0)
             return table.get(j).setValue(value);
+        ShiftEvent event = new ShiftEvent();
+        event.begin();
         table.add(j, new MapEntry<K,V>(key,value));
+        traceShift(event, "put", size() - 1 - j);
+        if (filter != null) {
+            filter.add(key);
+            if (size() > 2 * filter.getExpectedInsertions())
+                rebuildBloomFilter(); // amortized O(1), capacity doubles
+        }
         return null;
     }
 
     public V remove(K key) throws IllegalArgumentException {
         checkKey(key);
+        if (filter != null && !filter.mightContain(key)) return null;
         int j = findIndex(key);
         if (j == size() || compare(key, table.get(j)) != 0) return null;
-        return table.remove(j).getValue();
+        ShiftEvent event = new ShiftEvent();
+        event.begin();
+        V answer = table.remove(j).getValue();
+        traceShift(event, "remove", size() - j);
+        if (filter != null && ++removals >= removalsBeforeRebuild)
+            rebuildBloomFilter();
+        return answer;
+    }
+
+    // O(n + k) - inserts a block of k new keys with a single shift of the table.
+    // The keys must be strictly increasing, absent, and all fall between the
+    // same two neighbouring keys already in the map.
+    public void putRun(ArrayList<K> keys, ArrayList<V> values) throws IllegalArgumentException {
+        if (keys.size() != values.size())
+            throw new IllegalArgumentException("Need as many values as keys");
+        if (keys.isEmpty()) return;
+        for (int i = 0; i < keys.size(); i++) {
+            checkKey(keys.get(i));
+            if (i > 0 && compare(keys.get(i - 1), keys.get(i)) >= 0)
+                throw new IllegalArgumentException("Keys are not strictly increasing");
+        }
+        int j = findIndex(keys.get(0));
+        if (j < size() && compare(keys.get(keys.size() - 1), table.get(j)) >= 0)
+            throw new IllegalArgumentException("Keys overlap existing entries");
+
+        ArrayList<MapEntry<K,V>> run = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            run.add(new MapEntry<K,V>(keys.get(i), values.get(i)));
+        ShiftEvent event = new ShiftEvent();
+        event.begin();
+        table.addAll(j, run);
+        traceShift(event, "putRun", size() - j - run.size());
+        if (filter != null) {
+            for (K key : keys)
+                filter.add(key);
+            if (size() > 2 * filter.getExpectedInsertions())
+                rebuildBloomFilter();
+        }
+    }
+
+    // O(n) - removes every key in [fromKey, toKey) with a single shift,
+    // returns how many entries were removed
+    public int removeRange(K fromKey, K toKey) throws IllegalArgumentException {
+        checkKey(fromKey);
+        checkKey(toKey);
+        int from = findIndex(fromKey);
+        int to = findIndex(toKey);
+        if (to <= from) return 0;
+        ShiftEvent event = new ShiftEvent();
+        event.begin();
+        table.subList(from, to).clear();
+        traceShift(event, "removeRange", size() - from);
+        if (filter != null) {
+            removals += to - from;
+            if (removals >= removalsBeforeRebuild)
+                rebuildBloomFilter();
+        }
+        return to - from;
+    }
+
+    // O(n + k log(n/k)) - applies k updates with strictly increasing keys in a
+    // single pass that rebuilds the table: a non-null value is put, a null
+    // value removes the key. Untouched stretches are found by galloping and
+    // copied in bulk, so k scattered inserts cost one shift instead of k.
+    public void mergeSorted(ArrayList<K> keys, ArrayList<V> values) throws IllegalArgumentException {
+        if (keys.size() != values.size())
+            throw new IllegalArgumentException("Need as many values as keys");
+        for (int i = 0; i < keys.size(); i++) {
+            checkKey(keys.get(i));
+            if (i > 0 && compare(keys.get(i - 1), keys.get(i)) >= 0)
+                throw new IllegalArgumentException("Keys are not strictly increasing");
+        }
+        ShiftEvent event = new ShiftEvent();
+        event.begin();
+        ArrayList<MapEntry<K,V>> merged = new ArrayList<>(table.size() + keys.size());
+        int finger = 0;
+        int removed = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            K key = keys.get(i);
+            V value = values.get(i);
+            int j = fingerIndex(key, finger);
+            merged.addAll(table.subList(finger, j));
+            boolean present = j < table.size() && compare(key, table.get(j)) == 0;
+            if (present) {
+                if (value == null)
+                    removed++;
+                else {
+                    table.get(j).setValue(value);
+                    merged.add(table.get(j));
+                }
+                j++;
+            } else if (value != null) {
+                merged.add(new MapEntry<K,V>(key, value));
+                if (filter != null) filter.add(key);
+            }
+            finger = j;
+        }
+        merged.addAll(table.subList(finger, table.size()));
+        table = merged;
+        traceShift(event, "mergeSorted", table.size());
+        if (filter != null) {
+            removals += removed;
+            if (removals >= removalsBeforeRebuild || size() > 2 * filter.getExpectedInsertions())
+                rebuildBloomFilter();
+        }
+    }
+
+    // Records shifts of at least TraceEvents.shiftThreshold entries, if enabled
+    private void traceShift(ShiftEvent event, String operation, int moved) {
+        if (moved >= TraceEvents.shiftThreshold && event.shouldCommit()) {
+            event.structure = TraceEvents.identity(this);
+            event.size = size();
+            event.operation = operation;
+            event.moved = moved;
+            event.commit();
+        }
     }
 
     private Entry<K,V> safeEntry(int j) {
@@ -100,7 +420,7 @@ class SortedTableMap<K,V> extends AbstractSortedMap<K,V> {
 
         public EntryIterable()
         {
-            from = table.getFirst().getKey();
+            from = table.isEmpty() ? null : table.getFirst().getKey();
             to = null;
         }
 
@@ -119,8 +439,74 @@ class SortedTableMap<K,V> extends AbstractSortedMap<K,V> {
         }
 
         public Iterator<Entry<K,V>> iterator() {
+            if (table.isEmpty())
+                return Collections.emptyIterator();
             return new EntryIterator<>(from, to);
         }
+
+        public Spliterator<Entry<K,V>> spliterator() {
+            return entrySpliterator();
+        }
+    }
+
+    // Splits by index range, so parallel streams get balanced halves
+    public Spliterator<Entry<K,V>> entrySpliterator() {
+        return new TableSpliterator<Entry<K,V>>(0, table.size(), e -> e,
+            Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL,
+            (a, b) -> compare(a, b));
+    }
+
+    // Values in key order, not sorted by themselves
+    public Spliterator<V> valueSpliterator() {
+        return new TableSpliterator<V>(0, table.size(), e -> e.getValue(), 0, null);
+    }
+
+    private class TableSpliterator<T> implements Spliterator<T> {
+        private int index;
+        private int end;
+        private Function<MapEntry<K,V>,T> view;
+        private int characteristics;
+        private Comparator<? super T> order;
+
+        TableSpliterator(int index, int end, Function<MapEntry<K,V>,T> view,
+                         int extraCharacteristics, Comparator<? super T> order) {
+            this.index = index;
+            this.end = end;
+            this.view = view;
+            this.characteristics = Spliterator.SIZED | Spliterator.SUBSIZED
+                | Spliterator.ORDERED | extraCharacteristics;
+            this.order = order;
+        }
+
+        // O(1) - hands the first half of [index, end) to the new spliterator
+        public Spliterator<T> trySplit() {
+            int mid = (index + end) >>> 1;
+            if (mid <= index) return null;
+            Spliterator<T> prefix = new TableSpliterator<>(index, mid, view, characteristics, order);
+            index = mid;
+            return prefix;
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (index >= end) return false;
+            action.accept(view.apply(table.get(index++)));
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            for (; index < end; index++)
+                action.accept(view.apply(table.get(index)));
+        }
+
+        public long estimateSize() { return end - index; }
+
+        public int characteristics() { return characteristics; }
+
+        public Comparator<? super T> getComparator() {
+            if ((characteristics & Spliterator.SORTED) == 0)
+                throw new IllegalStateException();
+            return order;
+        }
     }
 
     private class EntryIterator<E> implements Iterator<E>
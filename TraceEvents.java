@@ -0,0 +1,84 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// Flight Recorder events for the slow paths of the data structures.
+// All of them are disabled by default; while disabled, begin/commit are
+// no-ops the JIT removes, together with the allocation of an event that
+// stays local. Events kept in a field are only created while enabled, see
+// the shared instances below.
+// Turn them on in a recording, e.g.
+//   -XX:StartFlightRecording:settings=profile,+ds.Shift#enabled=true
+//   jcmd <pid> JFR.start ds.Rebalance#enabled=true
+final class TraceEvents {
+
+    // Shifts and resizes moving fewer elements than this are not recorded
+    static volatile int shiftThreshold = 100_000;
+
+    // Never committed, only asked whether their event type is enabled
+    static final ShiftEvent SHIFT = new ShiftEvent();
+    static final IterationEvent ITERATION = new IterationEvent();
+
+    private TraceEvents() { }
+
+    static String identity(Object structure) {
+        return structure.getClass().getSimpleName() + "@"
+            + Integer.toHexString(System.identityHashCode(structure));
+    }
+}
+
+@Name("ds.Shift")
+@Label("Large Shift or Resize")
+@Category("Data Structures")
+@Description("An insert, remove or resize that moved at least TraceEvents.shiftThreshold elements")
+@Enabled(false)
+class ShiftEvent extends Event {
+    @Label("Structure")
+    String structure;
+
+    @Label("Size")
+    int size;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Elements Moved")
+    int moved;
+}
+
+@Name("ds.SlowIteration")
+@Label("Slow Iteration")
+@Category("Data Structures")
+@Description("A full pass of an iterator that took longer than the threshold")
+@Enabled(false)
+@Threshold("20 ms")
+class IterationEvent extends Event {
+    @Label("Structure")
+    String structure;
+
+    @Label("Size")
+    int size;
+
+    @Label("Operation")
+    String operation;
+}
+
+@Name("ds.Rebalance")
+@Label("Tree Rebalance")
+@Category("Data Structures")
+@Description("A restructure, rebuild or bulk join/split operation on a tree")
+@Enabled(false)
+class RebalanceEvent extends Event {
+    @Label("Structure")
+    String structure;
+
+    @Label("Size")
+    int size;
+
+    @Label("Operation")
+    String operation;
+}
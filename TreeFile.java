@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.function.ToIntFunction;
+
+// Compact file format for binary trees, e.g. those built by ArrayToBST.
+//   header   int magic, int element width (-1 if variable), long n,
+//            long offsets of the three sections below
+//   shape    2 bits per node in breadth-first order: has left, has right
+//   samples  variable width only: offset of every 16th element
+//   elements breadth-first, written by a Codec
+// There are no child pointers: the k-th set shape bit belongs to node k + 1,
+// so the children of node i are found by counting set bits before bit 2i,
+// which a small rank table answers in O(1). That lets MappedTree search the
+// file in place, while read rebuilds the nodes in one sequential pass.
+// The layout is breadth-first only: in preorder the right child of node i is
+// i + 1 + (size of the left subtree), which the shape bits cannot give in O(1).
+final class TreeFile {
+
+    static final int MAGIC = 0x42535431; // "BST1"
+    static final int HEADER = 40;
+    static final int SAMPLE = 16;
+
+    private TreeFile() { }
+
+    // O(n) - one breadth-first pass through fixed-size buffers; the queue holds
+    // one level of the tree at most
+    public static <E> void write(LinkedBinaryTree<E> tree, Codec<E> codec, Path file) throws IOException {
+        long n = tree.size();
+        int width = codec.fixedWidth();
+        long shapeOffset = HEADER;
+        long samplesOffset = shapeOffset + 8 * ((2 * n + 63) / 64);
+        long elementsOffset = samplesOffset + (width < 0 ? 8 * ((n + SAMPLE - 1) / SAMPLE) : 0);
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(width).putLong(n)
+                .putLong(shapeOffset).putLong(samplesOffset).putLong(elementsOffset);
+            header.flip();
+            writeFully(out, header, 0);
+
+            ByteBuffer shape = ByteBuffer.allocateDirect(1 << 16);
+            ByteBuffer samples = ByteBuffer.allocateDirect(1 << 16);
+            ByteBuffer elements = ByteBuffer.allocateDirect(1 << 20);
+            long shapePosition = shapeOffset;
+            long samplesPosition = samplesOffset;
+            long elementsPosition = elementsOffset;
+            long written = 0;    // element bytes so far
+            long word = 0;
+            long index = 0;
+
+            ArrayDeque<Position<E>> fringe = new ArrayDeque<>();
+            if (n > 0) fringe.add(tree.root());
+            while (!fringe.isEmpty()) {
+                Position<E> p = fringe.poll();
+                Position<E> left = tree.left(p);
+                Position<E> right = tree.right(p);
+                if (left != null) {
+                    word |= 1L << ((2 * index) & 63);
+                    fringe.add(left);
+                }
+                if (right != null) {
+                    word |= 1L << ((2 * index + 1) & 63);
+                    fringe.add(right);
+                }
+                if ((2 * index + 2) % 64 == 0) {
+                    if (!shape.hasRemaining()) shapePosition += flush(out, shape, shapePosition);
+                    shape.putLong(word);
+                    word = 0;
+                }
+
+                if (width < 0 && index % SAMPLE == 0) {
+                    if (!samples.hasRemaining()) samplesPosition += flush(out, samples, samplesPosition);
+                    samples.putLong(written);
+                }
+                E element = p.getElement();
+                int size = codec.sizeOf(element);
+                if (width >= 0 && size != width)
+                    throw new IllegalArgumentException("Codec claims fixed width " + width + " but wrote " + size);
+                if (elements.remaining() < size) {
+                    elementsPosition += flush(out, elements, elementsPosition);
+                    if (elements.capacity() < size)
+                        elements = ByteBuffer.allocate(size);
+                }
+                codec.write(element, elements);
+                written += size;
+                index++;
+            }
+            if (index != n)
+                throw new IllegalStateException("Tree size " + n + " but " + index + " nodes reachable");
+            if ((2 * n) % 64 != 0) {
+                if (!shape.hasRemaining()) shapePosition += flush(out, shape, shapePosition);
+                shape.putLong(word);
+            }
+            flush(out, shape, shapePosition);
+            flush(out, samples, samplesPosition);
+            flush(out, elements, elementsPosition);
+        }
+    }
+
+    private static int flush(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        writeFully(out, buffer, position);
+        buffer.clear();
+        return length;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += out.write(buffer, position);
+    }
+
+    // O(n) - rebuilds the saved shape in the empty tree. Into an AVLTree the
+    // subtrees are joined bottom-up, so a tree saved from a plain
+    // LinkedBinaryTree comes back balanced.
+    public static <E> void read(Path file, Codec<E> codec, LinkedBinaryTree<E> into)
+        throws IOException, IllegalStateException {
+        if (!into.isEmpty()) throw new IllegalStateException("Tree is not empty");
+        MappedTree<E> mapped = map(file, codec);
+        int n = mapped.size();
+        if (n == 0) return;
+        ByteBuffer elements = mapped.elements();
+        LinkedBinaryTree.Node<E>[] subtree = newNodes(n);
+        for (int i = 0; i < n; i++)
+            subtree[i] = into.createNode(codec.read(elements), null, null, null);
+        // Children come after their parent in breadth-first order
+        for (int i = n - 1; i >= 0; i--) {
+            int l = mapped.left(i);
+            int r = mapped.right(i);
+            subtree[i] = into.joinSorted(l < 0 ? null : subtree[l], subtree[i], r < 0 ? null : subtree[r]);
+            if (l >= 0) subtree[l] = null;
+            if (r >= 0) subtree[r] = null;
+        }
+        into.install(subtree[0], n);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static <E> LinkedBinaryTree.Node<E>[] newNodes(int n) {
+        return (LinkedBinaryTree.Node<E>[]) new LinkedBinaryTree.Node<?>[n];
+    }
+
+    // O(n / 64) - maps the file read-only; elements are decoded on access
+    public static <E> MappedTree<E> map(Path file, Codec<E> codec) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE)
+                throw new IOException("Tree files over 2 GB are not supported");
+            ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            return new MappedTree<>(buffer, codec);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int n = 1 << 20;
+        Integer[] data = new Integer[n];
+        for (int i = 0; i < n; i++)
+            data[i] = 3 * i;
+        LinkedBinaryTree<Integer> tree = new LinkedBinaryTree<>();
+        ArrayToBST.constructTree(tree, data);
+
+        Path file = Files.createTempFile("tree", ".bst");
+        long start = System.nanoTime();
+        TreeFile.write(tree, Codec.INTEGER, file);
+        System.out.printf("wrote %d nodes, %d bytes in %d ms%n", n, Files.size(file),
+                          (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        LinkedBinaryTree<Integer> copy = new LinkedBinaryTree<>();
+        TreeFile.read(file, Codec.INTEGER, copy);
+        System.out.printf("materialized %d nodes in %d ms, height %d%n", copy.size(),
+                          (System.nanoTime() - start) / 1_000_000, copy.height(copy.root()));
+
+        MappedTree<Integer> mapped = TreeFile.map(file, Codec.INTEGER);
+        System.out.println("mapped find 300: " + mapped.find(300, Integer::compare)
+                           + ", find 301: " + mapped.find(301, Integer::compare));
+
+        AVLTree<String,Integer> avl = new AVLTree<>();
+        for (int i = 0; i < 1000; i++)
+            avl.put("key" + i, i);
+        Codec<Entry<String,Integer>> entries = Codec.entry(Codec.STRING, Codec.INTEGER);
+        TreeFile.write(avl, entries, file);
+        MappedTree<Entry<String,Integer>> mappedAvl = TreeFile.map(file, entries);
+        System.out.println("key123 -> " + mappedAvl.search(e -> "key123".compareTo(e.getKey())));
+        Files.delete(file);
+    }
+}
+
+// Read-only tree served from a mapped TreeFile; nodes are numbered 0 .. n-1
+// in breadth-first order, root 0, and -1 stands for a missing child.
+// Safe for concurrent readers.
+class MappedTree<E> {
+
+    private ByteBuffer buffer;
+    private Codec<E> codec;
+    private int n;
+    private int width;
+    private int shapeOffset;
+    private int samplesOffset;
+    private int elementsOffset;
+    private int[] ranks;     // set shape bits before each 64-bit word
+
+    MappedTree(ByteBuffer buffer, Codec<E> codec) throws IOException {
+        this.buffer = buffer;
+        this.codec = codec;
+        if (buffer.getInt(0) != TreeFile.MAGIC)
+            throw new IOException("Not a tree file");
+        width = buffer.getInt(4);
+        if (width != codec.fixedWidth())
+            throw new IOException("File was written with element width " + width);
+        n = (int) buffer.getLong(8);
+        shapeOffset = (int) buffer.getLong(16);
+        samplesOffset = (int) buffer.getLong(24);
+        elementsOffset = (int) buffer.getLong(32);
+        int words = (int) ((2L * n + 63) / 64);
+        ranks = new int[words];
+        for (int w = 1; w < words; w++)
+            ranks[w] = ranks[w - 1] + Long.bitCount(word(w - 1));
+    }
+
+    private long word(int w) { return buffer.getLong(shapeOffset + 8 * w); }
+
+    // Set bits strictly before bit
+    private int rank(long bit) {
+        int w = (int) (bit >>> 6);
+        return ranks[w] + Long.bitCount(word(w) & ((1L << (bit & 63)) - 1));
+    }
+
+    private boolean bit(long bit) { return (word((int) (bit >>> 6)) & (1L << (bit & 63))) != 0; }
+
+    public int size() { return n; }
+
+    public int root() { return n == 0 ? -1 : 0; }
+
+    public int left(int i) { return bit(2L * i) ? rank(2L * i) + 1 : -1; }
+
+    public int right(int i) { return bit(2L * i + 1) ? rank(2L * i + 1) + 1 : -1; }
+
+    // Elements section positioned at element 0, a private view
+    ByteBuffer elements() {
+        ByteBuffer view = buffer.duplicate();
+        view.position(elementsOffset);
+        return view;
+    }
+
+    // O(1) for fixed width, otherwise decodes up to 15 elements after a sample
+    public E element(int i) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= n) throw new IndexOutOfBoundsException("No node " + i);
+        ByteBuffer view = buffer.duplicate();
+        if (width >= 0) {
+            view.position(elementsOffset + i * width);
+            return codec.read(view);
+        }
+        int sample = i / TreeFile.SAMPLE;
+        view.position(elementsOffset + (int) buffer.getLong(samplesOffset + 8 * sample));
+        for (int skip = i - sample * TreeFile.SAMPLE; skip > 0; skip--)
+            codec.read(view);
+        return codec.read(view);
+    }
+
+    // O(height) - descends from the root; direction < 0 goes left, > 0 right,
+    // 0 stops with that element. Null if the walk falls off the tree.
+    public E search(ToIntFunction<? super E> direction) {
+        int i = root();
+        while (i >= 0) {
+            E element = element(i);
+            int c = direction.applyAsInt(element);
+            if (c == 0) return element;
+            i = c < 0 ? left(i) : right(i);
+        }
+        return null;
+    }
+
+    // For a search tree ordered by comp
+    public E find(E probe, Comparator<? super E> comp) {
+        return search(e -> comp.compare(probe, e));
+    }
+}